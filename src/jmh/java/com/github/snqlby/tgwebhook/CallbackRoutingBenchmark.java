@@ -0,0 +1,67 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Lookup of a callback handler by exact, template and prefix patterns depending on the count of
+ * registered patterns of every kind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CallbackRoutingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int patterns;
+
+  private CallbackIndex index;
+  private String exact;
+  private String template;
+  private String prefix;
+  private String miss;
+
+  @Setup
+  public void setUp() {
+    String[] values = new String[patterns * 3];
+    for (int i = 0; i < patterns; i++) {
+      values[i * 3] = "button" + i;
+      values[i * 3 + 1] = "vote" + i + ":{id}:{dir}";
+      values[i * 3 + 2] = "page" + i + ":*";
+    }
+    index = new CallbackIndex(Fixtures.callbackMethods(values), false);
+    int middle = patterns / 2;
+    exact = "button" + middle;
+    template = "vote" + middle + ":12345:up";
+    prefix = "page" + middle + ":settings:2";
+    miss = "unknown:1";
+  }
+
+  @Benchmark
+  public List<CallbackMatch> findExact() {
+    return index.find(exact);
+  }
+
+  @Benchmark
+  public List<CallbackMatch> findTemplate() {
+    return index.find(template);
+  }
+
+  @Benchmark
+  public List<CallbackMatch> findPrefix() {
+    return index.find(prefix);
+  }
+
+  @Benchmark
+  public List<CallbackMatch> findMiss() {
+    return index.find(miss);
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Splitting of command arguments and their conversion to typed parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandArgumentsBenchmark {
+
+  private static final Class<?>[] TYPES = {long.class, int.class, String.class};
+
+  private final String plain = "/mute 123456789 30 flood";
+  private final String quoted = "/mute 123456789 30 \"flood in the \\\"main\\\" chat\"";
+  private final int start = "/mute".length();
+
+  @Benchmark
+  public CommandArguments parse() {
+    return CommandArguments.parse(plain, start);
+  }
+
+  @Benchmark
+  public void parseAndGet(Blackhole blackhole) {
+    CommandArguments arguments = CommandArguments.parse(plain, start);
+    for (int i = 0; i < arguments.size(); i++) {
+      blackhole.consume(arguments.get(i));
+    }
+  }
+
+  @Benchmark
+  public void parseQuotedAndGet(Blackhole blackhole) {
+    CommandArguments arguments = CommandArguments.parse(quoted, start);
+    for (int i = 0; i < arguments.size(); i++) {
+      blackhole.consume(arguments.get(i));
+    }
+  }
+
+  @Benchmark
+  public void parseTyped(Blackhole blackhole) {
+    CommandArguments arguments = CommandArguments.parse(plain, start);
+    if (arguments.matches(TYPES)) {
+      blackhole.consume(arguments.getLong(0));
+      blackhole.consume(arguments.getInt(1));
+      blackhole.consume(arguments.getRest(2));
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Lookup of a command handler depending on the count of registered commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandRoutingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int commands;
+
+  private CommandIndex index;
+  private String hit;
+  private String miss;
+  private int localityBit;
+
+  @Setup
+  public void setUp() {
+    String[] names = new String[commands];
+    for (int i = 0; i < commands; i++) {
+      names[i] = "/command" + i;
+    }
+    index = new CommandIndex(Fixtures.commandMethods(names));
+    hit = names[commands / 2] + " 42";
+    miss = "/unknown 42";
+    localityBit = Locality.bit(Locality.SUPERGROUP);
+  }
+
+  @Benchmark
+  public HandlerMethod findHit() {
+    return select(hit);
+  }
+
+  @Benchmark
+  public HandlerMethod findMiss() {
+    return select(miss);
+  }
+
+  private HandlerMethod select(String text) {
+    int end = text.indexOf(' ');
+    for (HandlerMethod method : index.find(text, 0, end < 0 ? text.length() : end)) {
+      if (method.acceptsLocality(localityBit)) {
+        return method;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,222 @@
+package com.github.snqlby.tgwebhook;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import com.github.snqlby.tgwebhook.methods.CallbackMethod;
+import com.github.snqlby.tgwebhook.methods.CallbackOrigin;
+import com.github.snqlby.tgwebhook.methods.CommandMethod;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.List;
+import org.telegram.telegrambots.bots.TelegramWebhookBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+/**
+ * Synthetic updates and handler methods for benchmarks.
+ */
+final class Fixtures {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String USER = "{\"id\":100,\"first_name\":\"User\",\"is_bot\":false}";
+  private static final String GROUP = "{\"id\":-200,\"type\":\"supergroup\",\"title\":\"Group\"}";
+
+  private Fixtures() {
+  }
+
+  static Update message(String text) {
+    return read("{\"update_id\":1,\"message\":" + messageJson(text) + "}");
+  }
+
+  static Update command(String text) {
+    int end = text.indexOf(' ');
+    return read("{\"update_id\":1,\"message\":{\"message_id\":1,\"date\":1,\"from\":" + USER
+        + ",\"chat\":" + GROUP + ",\"text\":" + quote(text)
+        + ",\"entities\":[{\"type\":\"bot_command\",\"offset\":0,\"length\":"
+        + (end < 0 ? text.length() : end) + "}]}}");
+  }
+
+  static Update join() {
+    return read("{\"update_id\":1,\"message\":{\"message_id\":1,\"date\":1,\"from\":" + USER
+        + ",\"chat\":" + GROUP + ",\"new_chat_members\":[" + USER + "]}}");
+  }
+
+  static Update editedMessage(String text) {
+    return read("{\"update_id\":1,\"edited_message\":" + messageJson(text) + "}");
+  }
+
+  static Update channelPost(String text) {
+    return read("{\"update_id\":1,\"channel_post\":{\"message_id\":1,\"date\":1,"
+        + "\"chat\":{\"id\":-300,\"type\":\"channel\",\"title\":\"Channel\"},\"text\":"
+        + quote(text) + "}}");
+  }
+
+  static Update callback(String data) {
+    return read("{\"update_id\":1,\"callback_query\":{\"id\":\"1\",\"from\":" + USER
+        + ",\"chat_instance\":\"1\",\"message\":" + messageJson("menu") + ",\"data\":"
+        + quote(data) + "}}");
+  }
+
+  static Update inlineQuery(String query) {
+    return read("{\"update_id\":1,\"inline_query\":{\"id\":\"1\",\"from\":" + USER
+        + ",\"query\":" + quote(query) + ",\"offset\":\"\"}}");
+  }
+
+  private static String messageJson(String text) {
+    return "{\"message_id\":1,\"date\":1,\"from\":" + USER + ",\"chat\":" + GROUP + ",\"text\":"
+        + quote(text) + "}";
+  }
+
+  private static String quote(String value) {
+    try {
+      return MAPPER.writeValueAsString(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Update read(String json) {
+    try {
+      return MAPPER.readValue(json, Update.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Creates command methods which route to the same target, one per command.
+   */
+  static HandlerMethod[] commandMethods(String[] commands) {
+    HandlerInfo info = new HandlerInfo(new Target());
+    Method method = Target.method("command");
+    HandlerMethod[] result = new HandlerMethod[commands.length];
+    for (int i = 0; i < commands.length; i++) {
+      result[i] = new HandlerMethod(info, new MethodMetadata(Target.class, method,
+          SubUpdateType.COMMAND, commandMethod(commands[i]), null, 0));
+    }
+    return result;
+  }
+
+  /**
+   * Creates callback methods which route to the same target, one per data pattern.
+   */
+  static HandlerMethod[] callbackMethods(String[] patterns) {
+    HandlerInfo info = new HandlerInfo(new Target());
+    Method method = Target.method("callback");
+    HandlerMethod[] result = new HandlerMethod[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      result[i] = new HandlerMethod(info, new MethodMetadata(Target.class, method,
+          SubUpdateType.CALLBACK_QUERY, callbackMethod(patterns[i]), null, 0));
+    }
+    return result;
+  }
+
+  private static CommandMethod commandMethod(String command) {
+    return new CommandMethod() {
+      @Override
+      public String command() {
+        return command;
+      }
+
+      @Override
+      public Locality[] locality() {
+        return new Locality[] {Locality.ALL};
+      }
+
+      @Override
+      public String state() {
+        return "";
+      }
+
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return CommandMethod.class;
+      }
+    };
+  }
+
+  private static CallbackMethod callbackMethod(String data) {
+    return new CallbackMethod() {
+      @Override
+      public String[] data() {
+        return new String[] {data};
+      }
+
+      @Override
+      public String[] game_short_name() {
+        return new String[] {""};
+      }
+
+      @Override
+      public Locality[] locality() {
+        return new Locality[] {Locality.ALL};
+      }
+
+      @Override
+      public CallbackOrigin[] origin() {
+        return new CallbackOrigin[] {CallbackOrigin.ALL};
+      }
+
+      @Override
+      public String state() {
+        return "";
+      }
+
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return CallbackMethod.class;
+      }
+    };
+  }
+
+  /**
+   * Target of synthetic handler methods, it has no annotated methods itself.
+   */
+  @AcceptTypes({UpdateType.MESSAGE, UpdateType.CALLBACK_QUERY})
+  public static class Target {
+
+    private static Method method(String name) {
+      for (Method method : Target.class.getMethods()) {
+        if (method.getName().equals(name)) {
+          return method;
+        }
+      }
+      throw new IllegalArgumentException(name);
+    }
+
+    public BotApiMethod command(AbsSender bot, Message message, List<String> args) {
+      return null;
+    }
+
+    public BotApiMethod callback(AbsSender bot, Object query, Object origin, Object params) {
+      return null;
+    }
+  }
+
+  static class Bot extends TelegramWebhookBot {
+
+    @Override
+    public BotApiMethod onWebhookUpdateReceived(Update update) {
+      return null;
+    }
+
+    @Override
+    public String getBotUsername() {
+      return "benchmark_bot";
+    }
+
+    @Override
+    public String getBotToken() {
+      return "";
+    }
+
+    @Override
+    public String getBotPath() {
+      return "benchmark";
+    }
+  }
+}
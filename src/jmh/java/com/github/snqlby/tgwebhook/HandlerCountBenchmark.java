@@ -0,0 +1,78 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.methods.MessageFlag;
+import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+/**
+ * Dispatch of a text message depending on the count of message handlers in a space. Every
+ * handler is tested, but only the last one accepts the message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HandlerCountBenchmark {
+
+  private static final String SPACE = "handler-count-benchmark";
+
+  @Param({"1", "10", "100"})
+  public int handlers;
+
+  private RequestResolver resolver;
+  private Update update;
+
+  @Setup
+  public void setUp() {
+    List<Object> objects = new ArrayList<>();
+    for (int i = 1; i < handlers; i++) {
+      objects.add(new MediaHandler());
+    }
+    objects.add(new TextHandler());
+    Handlers.addHandlers(SPACE, objects);
+    resolver = new RequestResolver(SPACE, new Fixtures.Bot());
+    update = Fixtures.message("hello world");
+  }
+
+  @TearDown
+  public void tearDown() {
+    Handlers.clearHandlers(SPACE);
+  }
+
+  @Benchmark
+  public BotApiMethod handleRequest() {
+    return resolver.handleRequest(update);
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class MediaHandler {
+
+    @MessageMethod(flag = {MessageFlag.PHOTO, MessageFlag.VIDEO, MessageFlag.DOCUMENT})
+    public BotApiMethod onMedia(AbsSender bot, Message message) {
+      return null;
+    }
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class TextHandler {
+
+    @MessageMethod(flag = MessageFlag.TEXT, locality = Locality.SUPERGROUP)
+    public BotApiMethod onText(AbsSender bot, Message message) {
+      return null;
+    }
+  }
+}
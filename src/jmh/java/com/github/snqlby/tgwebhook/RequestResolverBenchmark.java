@@ -0,0 +1,149 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.methods.CallbackMethod;
+import com.github.snqlby.tgwebhook.methods.CallbackOrigin;
+import com.github.snqlby.tgwebhook.methods.ChannelPostMethod;
+import com.github.snqlby.tgwebhook.methods.CommandMethod;
+import com.github.snqlby.tgwebhook.methods.EditedMessageMethod;
+import com.github.snqlby.tgwebhook.methods.InlineMethod;
+import com.github.snqlby.tgwebhook.methods.JoinMethod;
+import com.github.snqlby.tgwebhook.methods.JoinReason;
+import com.github.snqlby.tgwebhook.methods.MessageFlag;
+import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+/**
+ * Throughput of {@link RequestResolver#handleRequest(Update)} for every kind of update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestResolverBenchmark {
+
+  private static final String SPACE = "resolver-benchmark";
+
+  @Param({"MESSAGE", "COMMAND", "COMMAND_ARGUMENTS", "JOIN", "CALLBACK", "EDITED_MESSAGE",
+      "CHANNEL_POST", "INLINE_QUERY"})
+  public String type;
+
+  private RequestResolver resolver;
+  private Update update;
+
+  @Setup
+  public void setUp() {
+    Handlers.addHandler(SPACE, new BenchmarkHandler());
+    resolver = new RequestResolver(SPACE, new Fixtures.Bot());
+    switch (type) {
+      case "MESSAGE":
+        update = Fixtures.message("hello world");
+        break;
+      case "COMMAND":
+        update = Fixtures.command("/start");
+        break;
+      case "COMMAND_ARGUMENTS":
+        update = Fixtures.command("/mute 123456789 30 \"flood in the chat\"");
+        break;
+      case "JOIN":
+        update = Fixtures.join();
+        break;
+      case "CALLBACK":
+        update = Fixtures.callback("vote:42:up");
+        break;
+      case "EDITED_MESSAGE":
+        update = Fixtures.editedMessage("hello world");
+        break;
+      case "CHANNEL_POST":
+        update = Fixtures.channelPost("news");
+        break;
+      case "INLINE_QUERY":
+        update = Fixtures.inlineQuery("cats");
+        break;
+      default:
+        throw new IllegalArgumentException(type);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    Handlers.clearHandlers(SPACE);
+  }
+
+  @Benchmark
+  public BotApiMethod handleRequest() {
+    return resolver.handleRequest(update);
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE, UpdateType.EDITED_MESSAGE, UpdateType.CHANNEL_POST,
+      UpdateType.CALLBACK_QUERY, UpdateType.INLINE_QUERY})
+  public static class BenchmarkHandler {
+
+    @MessageMethod(flag = MessageFlag.TEXT)
+    public BotApiMethod onText(AbsSender bot, Message message) {
+      return null;
+    }
+
+    @MessageMethod(flag = {MessageFlag.PHOTO, MessageFlag.VIDEO}, locality = Locality.PRIVATE)
+    public BotApiMethod onMedia(AbsSender bot, Message message) {
+      return null;
+    }
+
+    @CommandMethod(command = "/start")
+    public BotApiMethod onStart(AbsSender bot, Message message, List<String> args) {
+      return null;
+    }
+
+    @CommandMethod(command = "/mute", locality = {Locality.GROUP, Locality.SUPERGROUP})
+    public BotApiMethod onMute(AbsSender bot, Message message, long userId, int minutes,
+        String reason) {
+      return null;
+    }
+
+    @JoinMethod(reason = JoinReason.SELF)
+    public BotApiMethod onJoin(AbsSender bot, Message message, JoinReason reason) {
+      return null;
+    }
+
+    @CallbackMethod(data = "vote:{id}:{dir}", origin = CallbackOrigin.MESSAGE)
+    public BotApiMethod onVote(AbsSender bot, CallbackQuery query, CallbackOrigin origin,
+        Map<String, String> params) {
+      return null;
+    }
+
+    @CallbackMethod(data = "menu:*")
+    public BotApiMethod onMenu(AbsSender bot, CallbackQuery query) {
+      return null;
+    }
+
+    @EditedMessageMethod
+    public BotApiMethod onEdit(AbsSender bot, Message message) {
+      return null;
+    }
+
+    @ChannelPostMethod
+    public BotApiMethod onPost(AbsSender bot, Message message) {
+      return null;
+    }
+
+    @InlineMethod
+    public BotApiMethod onInline(AbsSender bot, InlineQuery query) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable trie of callback patterns, used for CallbackQuery.data and game_short_name values.
+ *
+ * <p>Supported patterns:</p>
+ * <ul>
+ * <li>{@code "vote"} accepts exactly "vote";</li>
+ * <li>{@code "vote:*"} accepts any value which starts with "vote:";</li>
+ * <li>{@code "vote:{id}:{dir}"} accepts "vote:123:up" with parameters id=123 and dir=up. A
+ * parameter value is not empty and ends before the char that follows the parameter in the pattern
+ * or at the end of the value.</li>
+ * </ul>
+ *
+ * <p>Matches are returned in the following order: literal routes, routes with parameters and
+ * then prefix routes, from the longest prefix to the shortest one.</p>
+ *
+ * @see com.github.snqlby.tgwebhook.methods.CallbackMethod
+ */
+public final class CallbackIndex {
+
+  private static final int END = -1;
+
+  private final Node root = new Node();
+  private int maxParams;
+
+  CallbackIndex(HandlerMethod[] methods, boolean games) {
+    for (HandlerMethod method : methods) {
+      for (String pattern : games ? method.getGameShortNames() : method.getCallbackData()) {
+        add(pattern, method);
+      }
+    }
+  }
+
+  private void add(String pattern, HandlerMethod method) {
+    boolean prefix = pattern.endsWith("*");
+    int length = prefix ? pattern.length() - 1 : pattern.length();
+    List<String> names = new ArrayList<>();
+
+    Node node = root;
+    int i = 0;
+    while (i < length) {
+      char c = pattern.charAt(i);
+      int close = c == '{' ? pattern.indexOf('}', i) : -1;
+      if (close > i && close < length) {
+        names.add(pattern.substring(i + 1, close));
+        i = close + 1;
+        node = node.param(i < length ? pattern.charAt(i) : END);
+      } else {
+        node = node.child(c);
+        i++;
+      }
+    }
+
+    Route route = new Route(method, names.toArray(new String[0]));
+    if (prefix) {
+      node.prefixRoutes = append(node.prefixRoutes, route);
+    } else {
+      node.routes = append(node.routes, route);
+    }
+    maxParams = Math.max(maxParams, names.size());
+  }
+
+  /**
+   * Finds all routes which accept the value.
+   *
+   * @param value CallbackQuery.data or game_short_name, may be null
+   * @return matched methods with extracted parameters
+   */
+  public List<CallbackMatch> find(String value) {
+    if (value == null) {
+      return Collections.emptyList();
+    }
+    List<CallbackMatch> result = new ArrayList<>(1);
+    List<CallbackMatch> templates = new ArrayList<>(0);
+    List<CallbackMatch> prefixes = new ArrayList<>(0);
+    String[] values = maxParams == 0 ? null : new String[maxParams];
+    find(root, value, 0, values, 0, result, templates, prefixes);
+    result.addAll(templates);
+    result.addAll(prefixes);
+    return result;
+  }
+
+  /**
+   * Collects matches of the three kinds separately, so their order doesn't depend on the depth
+   * of the nodes. Deeper prefix routes are collected first, so longer prefixes precede shorter
+   * ones.
+   */
+  private void find(Node node, String value, int index, String[] values, int depth,
+      List<CallbackMatch> literals, List<CallbackMatch> templates,
+      List<CallbackMatch> prefixes) {
+    if (index == value.length()) {
+      for (Route route : node.routes) {
+        (route.names.length == 0 ? literals : templates).add(route.match(values));
+      }
+    } else {
+      Node child = node.find(value.charAt(index));
+      if (child != null) {
+        find(child, value, index + 1, values, depth, literals, templates, prefixes);
+      }
+    }
+
+    for (ParamEdge edge : node.params) {
+      int end = edge.stop == END ? value.length() : value.indexOf(edge.stop, index);
+      if (end > index) {
+        values[depth] = value.substring(index, end);
+        find(edge.next, value, end, values, depth + 1, literals, templates, prefixes);
+      }
+    }
+
+    for (Route route : node.prefixRoutes) {
+      prefixes.add(route.match(values));
+    }
+  }
+
+  private static <T> T[] append(T[] array, T value) {
+    T[] result = Arrays.copyOf(array, array.length + 1);
+    result[array.length] = value;
+    return result;
+  }
+
+  private static final class Node {
+
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    private char[] keys = new char[0];
+    private Node[] children = new Node[0];
+    private ParamEdge[] params = new ParamEdge[0];
+    private Route[] routes = NO_ROUTES;
+    private Route[] prefixRoutes = NO_ROUTES;
+
+    private Node find(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      return index >= 0 ? children[index] : null;
+    }
+
+    private Node child(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      if (index >= 0) {
+        return children[index];
+      }
+
+      int insert = -index - 1;
+      Node node = new Node();
+      char[] newKeys = new char[keys.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(keys, 0, newKeys, 0, insert);
+      System.arraycopy(children, 0, newChildren, 0, insert);
+      newKeys[insert] = key;
+      newChildren[insert] = node;
+      System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+      System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+      keys = newKeys;
+      children = newChildren;
+      return node;
+    }
+
+    private Node param(int stop) {
+      for (ParamEdge edge : params) {
+        if (edge.stop == stop) {
+          return edge.next;
+        }
+      }
+      ParamEdge edge = new ParamEdge(stop);
+      params = append(params, edge);
+      return edge.next;
+    }
+  }
+
+  private static final class ParamEdge {
+
+    private final int stop;
+    private final Node next = new Node();
+
+    private ParamEdge(int stop) {
+      this.stop = stop;
+    }
+  }
+
+  private static final class Route {
+
+    private final HandlerMethod method;
+    private final String[] names;
+
+    private Route(HandlerMethod method, String[] names) {
+      this.method = method;
+      this.names = names;
+    }
+
+    private CallbackMatch match(String[] values) {
+      if (names.length == 0) {
+        return new CallbackMatch(method, Collections.emptyMap());
+      }
+      Map<String, String> params = new LinkedHashMap<>();
+      for (int i = 0; i < names.length; i++) {
+        params.put(names[i], values[i]);
+      }
+      return new CallbackMatch(method, Collections.unmodifiableMap(params));
+    }
+  }
+}
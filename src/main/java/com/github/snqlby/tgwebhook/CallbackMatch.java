@@ -0,0 +1,32 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.Map;
+
+/**
+ * A handler method which accepts CallbackQuery data with parameters extracted from the data.
+ *
+ * @see CallbackIndex
+ */
+public final class CallbackMatch {
+
+  private final HandlerMethod method;
+  private final Map<String, String> params;
+
+  CallbackMatch(HandlerMethod method, Map<String, String> params) {
+    this.method = method;
+    this.params = params;
+  }
+
+  public HandlerMethod getMethod() {
+    return method;
+  }
+
+  /**
+   * Returns values of "{name}" segments declared by the matched pattern.
+   *
+   * @return unmodifiable map, empty if the pattern doesn't declare parameters
+   */
+  public Map<String, String> getParams() {
+    return params;
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.snqlby.tgwebhook;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Signals that the result of a handler is not needed anymore, for example because the user sent
+ * a newer inline query. A handler may check it between expensive steps.
+ *
+ * <p>If the handler runs on a virtual thread, the thread is also interrupted on cancellation, so
+ * blocking calls are aborted. Platform threads are not interrupted, they may belong to a pool
+ * which is not prepared for it.</p>
+ */
+public final class CancellationToken {
+
+  private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+  private volatile boolean cancelled;
+  private Thread thread;
+
+  CancellationToken() {
+  }
+
+  private static MethodHandle findIsVirtual() {
+    try {
+      return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual",
+          MethodType.methodType(boolean.class));
+    } catch (ReflectiveOperationException e) {
+      // Virtual threads are not supported before Java 21
+      return null;
+    }
+  }
+
+  private static boolean isVirtual(Thread thread) {
+    try {
+      return IS_VIRTUAL != null && (boolean) IS_VIRTUAL.invokeExact(thread);
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Stops a handler if the token is cancelled.
+   *
+   * @throws CancellationException if the token is cancelled
+   */
+  public void throwIfCancelled() {
+    if (cancelled) {
+      throw new CancellationException("Request is superseded");
+    }
+  }
+
+  synchronized void cancel() {
+    cancelled = true;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Binds the token to the current thread while a handler is running on it.
+   */
+  synchronized void attach() {
+    Thread current = Thread.currentThread();
+    thread = isVirtual(current) ? current : null;
+  }
+
+  /**
+   * Unbinds the token from the current thread and clears an interrupt made by it.
+   */
+  synchronized void detach() {
+    if (thread != null && cancelled) {
+      Thread.interrupted();
+    }
+    thread = null;
+  }
+}
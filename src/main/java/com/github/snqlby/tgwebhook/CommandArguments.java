@@ -0,0 +1,345 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Arguments of a command, separated by whitespace. An argument may be quoted to contain
+ * whitespace, and a backslash escapes the next character, for example
+ * {@code /ban 42 "spam \"links\""} has the arguments {@code 42} and {@code spam "links"}.
+ *
+ * <p>The text is split in a single pass which records bounds of the arguments only. Strings are
+ * created on access, integers are parsed directly from the text. The list is unmodifiable and is
+ * not thread-safe.</p>
+ */
+public final class CommandArguments extends AbstractList<String> implements RandomAccess {
+
+  private static final int[] NO_BOUNDS = new int[0];
+
+  private final String text;
+
+  /**
+   * Start and end of every argument. The end is inverted if the argument contains quotes or
+   * escapes and must be unquoted.
+   */
+  private int[] bounds = NO_BOUNDS;
+  private int size;
+  private String[] values;
+
+  /**
+   * Result of the last successful {@link #parseLong(int, long, long)}.
+   */
+  private long number;
+
+  /**
+   * Result of the last successful {@link #parseDouble(int)}.
+   */
+  private double decimal;
+
+  private CommandArguments(String text) {
+    this.text = text;
+  }
+
+  /**
+   * Splits a command text into arguments.
+   *
+   * @param text text of a message
+   * @param start index of the first character after the command
+   */
+  public static CommandArguments parse(String text, int start) {
+    CommandArguments result = new CommandArguments(text);
+    int length = text.length();
+    int i = start;
+    while (true) {
+      while (i < length && Character.isWhitespace(text.charAt(i))) {
+        i++;
+      }
+      if (i == length) {
+        return result;
+      }
+
+      int argumentStart = i;
+      boolean plain = true;
+      boolean quoted = false;
+      for (; i < length; i++) {
+        char c = text.charAt(i);
+        if (c == '\\' && i + 1 < length) {
+          plain = false;
+          i++;
+        } else if (c == '"') {
+          plain = false;
+          quoted = !quoted;
+        } else if (!quoted && Character.isWhitespace(c)) {
+          break;
+        }
+      }
+      result.add(argumentStart, i, plain);
+    }
+  }
+
+  /**
+   * Checks if a type can be bound to a command argument.
+   */
+  public static boolean isSupported(Class<?> type) {
+    return type == String.class || type == long.class || type == Long.class
+        || type == int.class || type == Integer.class || type == double.class
+        || type == Double.class || type == boolean.class || type == Boolean.class;
+  }
+
+  private void add(int start, int end, boolean plain) {
+    if (size * 2 == bounds.length) {
+      int[] grown = new int[Math.max(8, bounds.length * 2)];
+      System.arraycopy(bounds, 0, grown, 0, bounds.length);
+      bounds = grown;
+    }
+    bounds[size * 2] = start;
+    bounds[size * 2 + 1] = plain ? end : ~end;
+    size++;
+  }
+
+  private int start(int index) {
+    return bounds[index * 2];
+  }
+
+  private int end(int index) {
+    int end = bounds[index * 2 + 1];
+    return end < 0 ? ~end : end;
+  }
+
+  private boolean isPlain(int index) {
+    return bounds[index * 2 + 1] >= 0;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns an unquoted argument.
+   */
+  @Override
+  public String get(int index) {
+    checkIndex(index);
+    if (values == null) {
+      values = new String[size];
+    }
+    String value = values[index];
+    if (value == null) {
+      value = isPlain(index) ? text.substring(start(index), end(index))
+          : unquote(start(index), end(index));
+      values[index] = value;
+    }
+    return value;
+  }
+
+  /**
+   * Returns the text from an argument to the end of the command. All arguments are unquoted like
+   * by {@link #get(int)}, whitespace between them is kept as it was written.
+   */
+  public String getRest(int index) {
+    checkIndex(index);
+    if (index == size - 1) {
+      return get(index);
+    }
+    for (int i = index; i < size; i++) {
+      if (!isPlain(i)) {
+        return unquote(start(index), end(size - 1));
+      }
+    }
+    return text.substring(start(index), end(size - 1));
+  }
+
+  /**
+   * Converts an argument to long.
+   *
+   * @throws NumberFormatException if the argument is not a long value
+   */
+  public long getLong(int index) {
+    if (!parseLong(index, Long.MIN_VALUE, Long.MAX_VALUE)) {
+      throw new NumberFormatException("Argument is not a long value: " + get(index));
+    }
+    return number;
+  }
+
+  /**
+   * Converts an argument to int.
+   *
+   * @throws NumberFormatException if the argument is not an int value
+   */
+  public int getInt(int index) {
+    if (!parseLong(index, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+      throw new NumberFormatException("Argument is not an int value: " + get(index));
+    }
+    return (int) number;
+  }
+
+  /**
+   * Converts an argument to double. Only finite decimal values are accepted, for example "1.5" or
+   * "-2e3", but not "NaN", "Infinity" or hexadecimal values.
+   *
+   * @throws NumberFormatException if the argument is not a double value
+   */
+  public double getDouble(int index) {
+    if (!parseDouble(index)) {
+      throw new NumberFormatException("Argument is not a double value: " + get(index));
+    }
+    return decimal;
+  }
+
+  /**
+   * Converts an argument to boolean, "true" and "false" are accepted in any case.
+   *
+   * @throws IllegalArgumentException if the argument is not a boolean value
+   */
+  public boolean getBoolean(int index) {
+    if (equalsIgnoreCase(index, "true")) {
+      return true;
+    } else if (equalsIgnoreCase(index, "false")) {
+      return false;
+    }
+    throw new IllegalArgumentException("Argument is not a boolean value: " + get(index));
+  }
+
+  /**
+   * Checks if the arguments can be bound to parameters of a handler method. If the last
+   * parameter is a String, it receives the rest of the command, otherwise extra arguments are not
+   * allowed.
+   *
+   * @param types types of the parameters, supported by {@link #isSupported(Class)}
+   */
+  boolean matches(Class<?>[] types) {
+    int count = types.length;
+    if (size < count || (size > count && (count == 0 || types[count - 1] != String.class))) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (!isConvertible(i, types[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isConvertible(int index, Class<?> type) {
+    if (type == String.class) {
+      return true;
+    } else if (type == long.class || type == Long.class) {
+      return parseLong(index, Long.MIN_VALUE, Long.MAX_VALUE);
+    } else if (type == int.class || type == Integer.class) {
+      return parseLong(index, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    } else if (type == boolean.class || type == Boolean.class) {
+      return equalsIgnoreCase(index, "true") || equalsIgnoreCase(index, "false");
+    } else if (type == double.class || type == Double.class) {
+      return parseDouble(index);
+    }
+    return false;
+  }
+
+  private boolean equalsIgnoreCase(int index, String value) {
+    checkIndex(index);
+    if (!isPlain(index)) {
+      return get(index).equalsIgnoreCase(value);
+    }
+    int start = start(index);
+    return end(index) - start == value.length()
+        && text.regionMatches(true, start, value, 0, value.length());
+  }
+
+  /**
+   * Parses an integer argument into {@link #number}. Digits are accumulated as a negative value,
+   * so {@link Long#MIN_VALUE} doesn't overflow.
+   *
+   * @return false if the argument is not an integer within the range
+   */
+  private boolean parseLong(int index, long min, long max) {
+    checkIndex(index);
+    CharSequence value = text;
+    int start = start(index);
+    int end = end(index);
+    if (!isPlain(index)) {
+      value = get(index);
+      start = 0;
+      end = value.length();
+    }
+
+    boolean negative = start < end && value.charAt(start) == '-';
+    if (negative || (start < end && value.charAt(start) == '+')) {
+      start++;
+    }
+    if (start == end) {
+      return false;
+    }
+
+    long result = 0;
+    for (int i = start; i < end; i++) {
+      int digit = value.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+        return false;
+      }
+      result = result * 10 - digit;
+    }
+    if (!negative) {
+      if (result == Long.MIN_VALUE) {
+        return false;
+      }
+      result = -result;
+    }
+    if (result < min || result > max) {
+      return false;
+    }
+    number = result;
+    return true;
+  }
+
+  /**
+   * Parses a decimal argument into {@link #decimal}. Characters are checked before parsing, so
+   * special values, hexadecimal values and type suffixes which Java accepts are rejected.
+   *
+   * @return false if the argument is not a finite decimal value
+   */
+  private boolean parseDouble(int index) {
+    String value = get(index);
+    boolean digits = false;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits = true;
+      } else if (c != '.' && c != 'e' && c != 'E' && c != '-' && c != '+') {
+        return false;
+      }
+    }
+    if (!digits) {
+      return false;
+    }
+    try {
+      double result = Double.parseDouble(value);
+      if (Double.isInfinite(result)) {
+        return false;
+      }
+      decimal = result;
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private String unquote(int start, int end) {
+    StringBuilder result = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c == '\\' && i + 1 < end) {
+        result.append(text.charAt(++i));
+      } else if (c != '"') {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+}
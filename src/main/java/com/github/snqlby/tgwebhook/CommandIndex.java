@@ -0,0 +1,74 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.methods.CommandMethod;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Immutable hash index from a command to its {@link CommandMethod} handlers.
+ *
+ * <p>The index uses open addressing and looks up a region of a message text directly, so a
+ * command doesn't have to be cut out of the text before the lookup.</p>
+ */
+public final class CommandIndex {
+
+  private static final HandlerMethod[] NO_METHODS = new HandlerMethod[0];
+
+  private final String[] commands;
+  private final HandlerMethod[][] methods;
+  private final int mask;
+
+  CommandIndex(HandlerMethod[] handlerMethods) {
+    Map<String, List<HandlerMethod>> grouped = new LinkedHashMap<>();
+    for (HandlerMethod method : handlerMethods) {
+      grouped.computeIfAbsent(method.getCommand(), e -> new ArrayList<>()).add(method);
+    }
+
+    int capacity = Integer.highestOneBit(Math.max(grouped.size(), 1) * 2) << 1;
+    this.commands = new String[capacity];
+    this.methods = new HandlerMethod[capacity][];
+    this.mask = capacity - 1;
+
+    for (Entry<String, List<HandlerMethod>> entry : grouped.entrySet()) {
+      String command = entry.getKey();
+      int index = hash(command, 0, command.length()) & mask;
+      while (commands[index] != null) {
+        index = (index + 1) & mask;
+      }
+      commands[index] = command;
+      methods[index] = entry.getValue().toArray(NO_METHODS);
+    }
+  }
+
+  /**
+   * Finds handlers for a command located in the text.
+   *
+   * @param text message text
+   * @param start index of the first command char
+   * @param end index after the last command char
+   * @return handlers by their order or an empty array. The array must not be modified.
+   */
+  public HandlerMethod[] find(String text, int start, int end) {
+    int length = end - start;
+    int index = hash(text, start, end) & mask;
+    String command;
+    while ((command = commands[index]) != null) {
+      if (command.length() == length && command.regionMatches(0, text, start, length)) {
+        return methods[index];
+      }
+      index = (index + 1) & mask;
+    }
+    return NO_METHODS;
+  }
+
+  private static int hash(String text, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + text.charAt(i);
+    }
+    return hash ^ (hash >>> 16);
+  }
+}
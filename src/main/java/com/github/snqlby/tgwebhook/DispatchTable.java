@@ -0,0 +1,205 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable dispatch table of a space.
+ *
+ * <p>Handler methods are grouped by {@link SubUpdateType} when handlers are registered, so
+ * resolving candidates for an update is a plain array lookup. Methods of a group are sorted by
+ * {@link HandlerMethod#getOrder()}, the sort is stable, so methods with the same order keep the
+ * registration order.</p>
+ *
+ * <p>Every change of a space publishes a new table with a higher version. Updates keep the table
+ * which was current when they arrived, so a replaced table stays in use until its last update is
+ * handled and then it is released.</p>
+ *
+ * @see Handlers
+ */
+public final class DispatchTable {
+
+  private static final HandlerMethod[] NO_METHODS = new HandlerMethod[0];
+
+  /**
+   * Bit of {@link #state} which is set when the table is replaced, other bits count updates in
+   * flight.
+   */
+  private static final int RETIRED = 1 << 30;
+
+  static final DispatchTable EMPTY =
+      new DispatchTable(0, new ArrayList<>(), new ArrayList<>());
+
+  private final long version;
+  private final AtomicInteger state = new AtomicInteger();
+  private final CompletableFuture<Void> released = new CompletableFuture<>();
+  private final List<HandlerInfo> handlers;
+  private final InterceptorChain interceptors;
+  private final HandlerMethod[][] methods;
+  private final CommandIndex commands;
+  private final CallbackIndex callbacks;
+  private final CallbackIndex games;
+  private final TextIndex texts;
+  private final boolean stateful;
+
+  DispatchTable(long version, List<HandlerInfo> handlers, List<UpdateInterceptor> interceptors) {
+    this.version = version;
+    this.handlers = Collections.unmodifiableList(new ArrayList<>(handlers));
+    this.interceptors = interceptors.isEmpty() ? InterceptorChain.EMPTY
+        : new InterceptorChain(interceptors);
+    SubUpdateType[] subTypes = SubUpdateType.values();
+    List<List<HandlerMethod>> grouped = new ArrayList<>(subTypes.length);
+    for (int i = 0; i < subTypes.length; i++) {
+      grouped.add(new ArrayList<>());
+    }
+
+    boolean stateful = false;
+    for (HandlerInfo handler : handlers) {
+      for (HandlerMethod method : handler.getHandlerMethods()) {
+        grouped.get(method.getSubType().ordinal()).add(method);
+        stateful |= method.getState() != null;
+      }
+    }
+    this.stateful = stateful;
+
+    this.methods = new HandlerMethod[subTypes.length][];
+    for (int i = 0; i < subTypes.length; i++) {
+      List<HandlerMethod> group = grouped.get(i);
+      group.sort(Comparator.comparingInt(HandlerMethod::getOrder));
+      this.methods[i] = group.isEmpty() ? NO_METHODS : group.toArray(NO_METHODS);
+    }
+    this.commands = new CommandIndex(getMethods(SubUpdateType.COMMAND));
+    this.callbacks = new CallbackIndex(getMethods(SubUpdateType.CALLBACK_QUERY), false);
+    this.games = new CallbackIndex(getMethods(SubUpdateType.CALLBACK_QUERY), true);
+    this.texts = new TextIndex(getMethods(SubUpdateType.TEXT));
+  }
+
+  /**
+   * Marks the table as used by an update.
+   *
+   * @return false if the table is already released, a newer one must be used instead
+   */
+  boolean acquire() {
+    while (true) {
+      int current = state.get();
+      if (current == RETIRED) {
+        return false;
+      }
+      if (state.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Marks the end of an update which has acquired the table.
+   */
+  void release() {
+    if (state.decrementAndGet() == RETIRED) {
+      released.complete(null);
+    }
+  }
+
+  /**
+   * Marks the table as replaced by a newer one, it is released when no update uses it.
+   */
+  void retire() {
+    if (state.getAndAdd(RETIRED) == 0) {
+      released.complete(null);
+    }
+  }
+
+  /**
+   * Returns the version of the table, versions of published tables are increasing.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the count of updates which are being handled with this table.
+   */
+  public int getInFlightCount() {
+    return state.get() & (RETIRED - 1);
+  }
+
+  /**
+   * Returns a stage which completes when the table is replaced and all its updates are handled,
+   * for example to destroy handlers which are not used anymore.
+   */
+  public CompletionStage<Void> getReleased() {
+    return released;
+  }
+
+  /**
+   * Returns registered handlers in registration order.
+   */
+  public List<HandlerInfo> getHandlers() {
+    return handlers;
+  }
+
+  /**
+   * Returns interceptors of the space.
+   */
+  public InterceptorChain getInterceptors() {
+    return interceptors;
+  }
+
+  /**
+   * Returns handler methods for a type by their order, including observers.
+   *
+   * <p>The returned array is shared and must not be modified.</p>
+   */
+  public HandlerMethod[] getMethods(SubUpdateType subType) {
+    return methods[subType.ordinal()];
+  }
+
+  /**
+   * Returns the index of CommandMethod handlers.
+   */
+  public CommandIndex getCommands() {
+    return commands;
+  }
+
+  /**
+   * Returns the index of CallbackMethod handlers by CallbackQuery.data.
+   */
+  public CallbackIndex getCallbacks() {
+    return callbacks;
+  }
+
+  /**
+   * Returns the index of CallbackMethod handlers by CallbackQuery.game_short_name.
+   */
+  public CallbackIndex getGames() {
+    return games;
+  }
+
+  /**
+   * Returns the automaton of TextMethod triggers.
+   */
+  public TextIndex getTexts() {
+    return texts;
+  }
+
+  /**
+   * Checks if there is at least one handler method for a type.
+   */
+  public boolean hasMethods(SubUpdateType subType) {
+    return methods[subType.ordinal()].length != 0;
+  }
+
+  /**
+   * Checks if there is at least one handler method with a conversation state, otherwise states
+   * are not read.
+   */
+  public boolean hasStates() {
+    return stateful;
+  }
+}
@@ -0,0 +1,32 @@
+package com.github.snqlby.tgwebhook;
+
+import java.lang.reflect.Method;
+
+/**
+ * Routes of a handler class generated at compile time by tgwebhook-processor.
+ *
+ * <p>The generated class is named after the handler class with the {@link #SUFFIX} postfix, for
+ * example {@code StartHandler_TgRoutes}. If it is present, annotated methods are not searched
+ * with reflection and are called directly instead of a MethodHandle.</p>
+ *
+ * @see HandlerInfo
+ */
+public interface GeneratedRoutes {
+
+  String SUFFIX = "_TgRoutes";
+
+  /**
+   * Returns all annotated methods of the handler class.
+   */
+  Method[] methods() throws NoSuchMethodException;
+
+  /**
+   * Invokes an annotated method.
+   *
+   * @param index index of the method in {@link #methods()}
+   * @param handler an instance of the handler class
+   * @return result of the method, null for void methods
+   */
+  Object invoke(int index, Object handler, Object arg0, Object arg1, Object arg2, Object arg3)
+      throws Exception;
+}
@@ -0,0 +1,167 @@
+package com.github.snqlby.tgwebhook;
+
+import static com.github.snqlby.tgwebhook.utils.AnnotationUtils.getMethodAnnotation;
+
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AcceptTypes values and resolved methods of a handler class. They are computed once per class,
+ * so registering the same class in many spaces doesn't scan it again.
+ *
+ * <p>Annotated methods are taken from {@link GeneratedRoutes} if the class was processed by
+ * tgwebhook-processor, otherwise they are searched with reflection.</p>
+ *
+ * @see HandlerInfo
+ */
+final class HandlerClass {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HandlerClass.class);
+
+  private static final ClassValue<HandlerClass> CLASSES = new ClassValue<HandlerClass>() {
+    @Override
+    protected HandlerClass computeValue(Class<?> type) {
+      return new HandlerClass(type);
+    }
+  };
+
+  private final List<UpdateType> updateTypes;
+  private final Map<Method, SubUpdateType> methodProcessors;
+  private final List<MethodMetadata> methods;
+
+  private HandlerClass(Class<?> handlerClass) {
+    AcceptTypes acceptTypes = handlerClass.getAnnotation(AcceptTypes.class);
+    this.updateTypes = acceptTypes == null ? Collections.emptyList()
+        : Collections.unmodifiableList(Arrays.asList(acceptTypes.value()));
+
+    Map<Method, SubUpdateType> processors = new HashMap<>();
+    List<MethodMetadata> resolved = new ArrayList<>();
+    GeneratedRoutes routes = findGeneratedRoutes(handlerClass);
+    Method[] methods = null;
+    if (routes != null) {
+      try {
+        methods = routes.methods();
+      } catch (NoSuchMethodException e) {
+        LOG.warn("Generated routes of {} are outdated: {}", handlerClass, e.getMessage());
+        routes = null;
+      }
+    }
+
+    if (routes == null) {
+      // The order of Class.getMethods() is not specified, sort methods to register them the same
+      // way on every start
+      Method[] declared = handlerClass.getMethods();
+      Arrays.sort(declared, Comparator.comparing(Method::getName)
+          .thenComparing(Method::toGenericString));
+      for (Method method : declared) {
+        resolveMethod(handlerClass, method, null, 0, processors, resolved);
+      }
+    } else {
+      for (int i = 0; i < methods.length; i++) {
+        resolveMethod(handlerClass, methods[i], routes, i, processors, resolved);
+      }
+    }
+    this.methodProcessors = Collections.unmodifiableMap(processors);
+    this.methods = Collections.unmodifiableList(resolved);
+  }
+
+  /**
+   * Returns metadata of a handler class, it is computed on the first call.
+   */
+  static HandlerClass of(Class<?> handlerClass) {
+    return CLASSES.get(handlerClass);
+  }
+
+  /**
+   * Searches a class generated by tgwebhook-processor for the class or its superclasses. The
+   * superclasses are inspected to support proxies created by frameworks. Routes of a superclass
+   * are not used for a subclass which declares annotated methods itself, they would miss them.
+   *
+   * @return null if not found
+   */
+  private static GeneratedRoutes findGeneratedRoutes(Class<?> clazz) {
+    for (Class<?> type = clazz; type != null && type != Object.class;
+        type = type.getSuperclass()) {
+      String name = type.getName();
+      int nameStart = name.lastIndexOf('.') + 1;
+      String routesName = name.substring(0, nameStart) + name.substring(nameStart)
+          .replace('$', '_') + GeneratedRoutes.SUFFIX;
+      try {
+        Class<?> routesClass = Class.forName(routesName, true, type.getClassLoader());
+        return (GeneratedRoutes) routesClass.getConstructor().newInstance();
+      } catch (ClassNotFoundException ignored) {
+        if (!inheritsRoutes(type)) {
+          return null;
+        }
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        LOG.warn("Cannot use generated routes {}: {}", routesName, e.getMessage());
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks if a class may use generated routes of its superclass: it is a proxy or it doesn't
+   * declare annotated methods. A method which overrides an annotated one without annotations is
+   * called by the routes of the superclass as well.
+   */
+  private static boolean inheritsRoutes(Class<?> type) {
+    // Proxies of CGLIB and ByteBuddy have "$$" in their names
+    if (type.isSynthetic() || type.getName().contains("$$")) {
+      return true;
+    }
+    for (Method method : type.getDeclaredMethods()) {
+      for (SubUpdateType subType : SubUpdateType.values()) {
+        if (method.isAnnotationPresent(subType.getAnnotation())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Resolves every supported annotation of the method into {@link MethodMetadata}.
+   *
+   * @param method method from a class with AccessType annotation
+   * @param routes generated routes, null to bind the method with a MethodHandle
+   * @param routeIndex index of the method in the generated routes
+   */
+  private void resolveMethod(Class<?> handlerClass, Method method, GeneratedRoutes routes,
+      int routeIndex, Map<Method, SubUpdateType> processors, List<MethodMetadata> resolved) {
+    for (UpdateType type : updateTypes) {
+      for (SubUpdateType subType : type.getSubTypes()) {
+        Annotation annotation = getMethodAnnotation(subType.getAnnotation(),
+            method.getDeclaringClass(), method);
+        if (annotation != null) {
+          processors.putIfAbsent(method, subType);
+          resolved.add(new MethodMetadata(handlerClass, method, subType, annotation, routes,
+              routeIndex));
+        }
+      }
+    }
+  }
+
+  List<UpdateType> getUpdateTypes() {
+    return updateTypes;
+  }
+
+  Map<Method, SubUpdateType> getMethodProcessors() {
+    return methodProcessors;
+  }
+
+  List<MethodMetadata> getMethods() {
+    return methods;
+  }
+}
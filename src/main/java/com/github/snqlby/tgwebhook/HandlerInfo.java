@@ -1,56 +1,34 @@
 package com.github.snqlby.tgwebhook;
 
-import static com.github.snqlby.tgwebhook.utils.AnnotationUtils.getMethodAnnotation;
-
 import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Stream;
 
 public class HandlerInfo {
 
-  private Object handler;
-  private List<UpdateType> updateTypes = new ArrayList<>();
-  private Map<Method, SubUpdateType> methodProcessors = new HashMap<>();
+  private final Object handler;
+  private final HandlerClass handlerClass;
+  private final List<HandlerMethod> handlerMethods;
 
   /**
-   * Stores information about AccessType values and method annotations per class.
+   * Binds a handler instance to the metadata of its class. The class is scanned only when its
+   * first instance is registered, other instances share the result.
    *
    * @param handler a class instance with declared AccessType annotation
+   * @see HandlerClass
    */
   public HandlerInfo(Object handler) {
     this.handler = handler;
-    AcceptTypes acceptTypes = handler.getClass().getAnnotation(AcceptTypes.class);
-    Optional.ofNullable(acceptTypes).ifPresent(e -> Collections.addAll(updateTypes, e.value()));
-
-    Stream.of(handler.getClass().getMethods()).forEach(e -> {
-      Optional<SubUpdateType> processor = Optional.ofNullable(findProcessor(e));
-      processor.ifPresent(subUpdateType -> methodProcessors.put(e, subUpdateType));
-    });
-  }
-
-  /**
-   * Searches supported annotation for the the method.
-   *
-   * @param method method from a class with AccessType annotation
-   */
-  private SubUpdateType findProcessor(Method method) {
-    for (UpdateType type : getUpdateTypes()) {
-      for (SubUpdateType subType : type.getSubTypes()) {
-        Annotation annotation = getMethodAnnotation(subType.getAnnotation(),
-            method.getDeclaringClass(), method);
-        if (annotation != null) {
-          return subType;
-        }
-      }
+    this.handlerClass = HandlerClass.of(handler.getClass());
+    List<MethodMetadata> methods = handlerClass.getMethods();
+    List<HandlerMethod> bound = new ArrayList<>(methods.size());
+    for (MethodMetadata method : methods) {
+      bound.add(new HandlerMethod(this, method));
     }
-    return null;
+    this.handlerMethods = Collections.unmodifiableList(bound);
   }
 
   public Object getHandler() {
@@ -58,14 +36,21 @@ public class HandlerInfo {
   }
 
   public List<UpdateType> getUpdateTypes() {
-    return updateTypes;
+    return handlerClass.getUpdateTypes();
   }
 
   public Map<Method, SubUpdateType> getMethodProcessors() {
-    return methodProcessors;
+    return handlerClass.getMethodProcessors();
+  }
+
+  /**
+   * Returns resolved methods which will be used to build a {@link DispatchTable}.
+   */
+  public List<HandlerMethod> getHandlerMethods() {
+    return handlerMethods;
   }
 
   public Method getMethod() {
     return null;
   }
-}
\ No newline at end of file
+}
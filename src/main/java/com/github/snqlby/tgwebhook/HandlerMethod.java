@@ -0,0 +1,273 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import com.github.snqlby.tgwebhook.methods.CallbackOrigin;
+import com.github.snqlby.tgwebhook.methods.HandlerOrder;
+import com.github.snqlby.tgwebhook.methods.InlineMethod;
+import com.github.snqlby.tgwebhook.methods.MessageFlag;
+import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import com.github.snqlby.tgwebhook.methods.Observe;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.regex.Pattern;
+
+/**
+ * A resolved handler method: the target instance and the values of its annotation. Values which
+ * don't depend on the instance are parsed once per handler class and shared.
+ *
+ * @see DispatchTable
+ * @see MethodMetadata
+ */
+public final class HandlerMethod {
+
+  /**
+   * Count of arguments accepted by {@link #invoke(Object, Object, Object, Object)}.
+   */
+  public static final int MAX_ARGUMENTS = 4;
+
+  private final HandlerInfo handlerInfo;
+  private final Object handler;
+  private final MethodMetadata metadata;
+
+  /**
+   * Cache of answers of InlineMethod, null if it is disabled.
+   */
+  private final InlineCache inlineCache;
+
+  /**
+   * Latest queries of users for InlineMethod, null if they are not superseded.
+   */
+  private final InlineQueryTracker inlineQueryTracker;
+
+  /**
+   * Buffered media groups of MessageMethod, null if messages are not aggregated.
+   */
+  private final MediaGroupBuffer mediaGroupBuffer;
+
+  HandlerMethod(HandlerInfo handlerInfo, MethodMetadata metadata) {
+    this.handlerInfo = handlerInfo;
+    this.handler = handlerInfo.getHandler();
+    this.metadata = metadata;
+
+    // Answers and queries belong to the bot of a space, so they are not shared by instances
+    if (metadata.getAnnotation() instanceof InlineMethod) {
+      InlineMethod inlineMethod = (InlineMethod) metadata.getAnnotation();
+      this.inlineCache = InlineCache.of(inlineMethod);
+      this.inlineQueryTracker = inlineMethod.supersede() ? new InlineQueryTracker() : null;
+    } else {
+      this.inlineCache = null;
+      this.inlineQueryTracker = null;
+    }
+    this.mediaGroupBuffer = metadata.getAnnotation() instanceof MessageMethod
+        ? MediaGroupBuffer.of((MessageMethod) metadata.getAnnotation()) : null;
+  }
+
+  /**
+   * Tests that the method accepts a room. Used by JoinMethod and LeaveMethod.
+   */
+  public boolean acceptsRoom(long roomId) {
+    return metadata.acceptsRoom(roomId);
+  }
+
+  /**
+   * Tests that the method accepts a reason. Used by JoinMethod and LeaveMethod.
+   *
+   * @param reason JoinReason or LeaveReason of a received update
+   */
+  public boolean acceptsReason(Enum<?> reason) {
+    return metadata.acceptsReason(reason);
+  }
+
+  /**
+   * Tests that the method accepts a locality. Used by CommandMethod, MessageMethod, TextMethod
+   * and CallbackMethod.
+   *
+   * @param localityBit bit of a received locality
+   * @see Locality#bit(Locality)
+   */
+  public boolean acceptsLocality(int localityBit) {
+    return metadata.acceptsLocality(localityBit);
+  }
+
+  /**
+   * Tests that the method accepts any flag of a message. Used by MessageMethod.
+   *
+   * @param flags flags of a received message
+   * @see MessageFlag#findFlags(org.telegram.telegrambots.meta.api.objects.Message)
+   */
+  public boolean acceptsFlags(int flags) {
+    return metadata.acceptsFlags(flags);
+  }
+
+  /**
+   * Tests that the method accepts an origin. Used by CallbackMethod.
+   *
+   * @param originBit bit of a received origin
+   * @see CallbackOrigin#bit()
+   */
+  public boolean acceptsOrigin(int originBit) {
+    return metadata.acceptsOrigin(originBit);
+  }
+
+  /**
+   * Tests that typed parameters of the method can be bound to the arguments. Used by
+   * CommandMethod, methods which accept arguments as a list accept any arguments.
+   */
+  public boolean acceptsArguments(CommandArguments arguments) {
+    return metadata.acceptsArguments(arguments);
+  }
+
+  /**
+   * Tests that the method is selected in a conversation state. Methods without a state accept
+   * any state, including no conversation.
+   *
+   * @param current state of the user, null if there is no conversation
+   */
+  public boolean acceptsState(String current) {
+    return metadata.acceptsState(current);
+  }
+
+  /**
+   * Returns the command of CommandMethod, null for other methods.
+   */
+  public String getCommand() {
+    return metadata.getCommand();
+  }
+
+  /**
+   * Returns CallbackQuery.data patterns of CallbackMethod, empty for other methods.
+   *
+   * @see CallbackIndex
+   */
+  public String[] getCallbackData() {
+    return metadata.getCallbackData();
+  }
+
+  /**
+   * Returns CallbackQuery.game_short_name patterns of CallbackMethod, empty for other methods.
+   *
+   * @see CallbackIndex
+   */
+  public String[] getGameShortNames() {
+    return metadata.getGameShortNames();
+  }
+
+  /**
+   * Returns whole-word triggers of TextMethod, empty for other methods.
+   *
+   * @see TextIndex
+   */
+  public String[] getKeywords() {
+    return metadata.getKeywords();
+  }
+
+  /**
+   * Returns phrase triggers of TextMethod, empty for other methods.
+   *
+   * @see TextIndex
+   */
+  public String[] getPhrases() {
+    return metadata.getPhrases();
+  }
+
+  /**
+   * Returns compiled regular expressions of TextMethod, empty for other methods.
+   *
+   * @see TextIndex
+   */
+  public Pattern[] getPatterns() {
+    return metadata.getPatterns();
+  }
+
+  /**
+   * Returns the conversation state of the method, null if it is selected in any state.
+   *
+   * @see com.github.snqlby.tgwebhook.state.ConversationStore
+   */
+  public String getState() {
+    return metadata.getState();
+  }
+
+  /**
+   * Invokes the method. Arguments which are not declared by the method are ignored.
+   *
+   * @return result of the method, null for void methods
+   * @throws Exception any exception thrown by the method
+   */
+  public Object invoke(Object arg0, Object arg1, Object arg2, Object arg3) throws Exception {
+    try {
+      return metadata.invoke(handler, arg0, arg1, arg2, arg3);
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new UndeclaredThrowableException(e);
+    }
+  }
+
+  /**
+   * Returns the cache of InlineMethod, null if it is disabled or for other methods.
+   */
+  public InlineCache getInlineCache() {
+    return inlineCache;
+  }
+
+  /**
+   * Returns latest queries of InlineMethod, null if they are not superseded or for other methods.
+   */
+  public InlineQueryTracker getInlineQueryTracker() {
+    return inlineQueryTracker;
+  }
+
+  /**
+   * Returns buffered media groups of MessageMethod, null if messages are not aggregated or for
+   * other methods.
+   */
+  public MediaGroupBuffer getMediaGroupBuffer() {
+    return mediaGroupBuffer;
+  }
+
+  /**
+   * Returns the order among methods of the same type.
+   *
+   * @see HandlerOrder
+   */
+  public int getOrder() {
+    return metadata.getOrder();
+  }
+
+  /**
+   * Checks if the method observes updates instead of answering them.
+   *
+   * @see Observe
+   */
+  public boolean isObserver() {
+    return metadata.isObserver();
+  }
+
+  public HandlerInfo getHandlerInfo() {
+    return handlerInfo;
+  }
+
+  public Object getHandler() {
+    return handler;
+  }
+
+  public Method getMethod() {
+    return metadata.getMethod();
+  }
+
+  public SubUpdateType getSubType() {
+    return metadata.getSubType();
+  }
+
+  /**
+   * Returns the annotation of the method.
+   *
+   * @param <A> annotation type linked with {@link #getSubType()}
+   */
+  @SuppressWarnings("unchecked")
+  public <A extends Annotation> A getAnnotation() {
+    return (A) metadata.getAnnotation();
+  }
+}
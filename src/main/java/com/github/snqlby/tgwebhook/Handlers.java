@@ -1,19 +1,19 @@
 package com.github.snqlby.tgwebhook;
 
-import static com.github.snqlby.tgwebhook.utils.AnnotationUtils.getMethodAnnotation;
-
 import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,16 +22,25 @@ import org.slf4j.LoggerFactory;
  *
  * <p>We are using spaces to isolate handler groups from each other. This may be necessary when
  * servicing multiple bots in the same application.</p>
+ *
+ * <p>Registered handlers are published as immutable snapshots, so reading never blocks. Changes
+ * are serialized and replace the whole snapshot.</p>
+ *
+ * <p>A replaced dispatch table is retired: updates which are already dispatched with it finish
+ * on it, new updates use the new table. A complete version of a space can be prepared with
+ * {@link #stage(String)} and swapped in at once.</p>
  */
 public class Handlers {
 
   public static final String DEFAULT_SPACE = "default";
   private static final Logger LOG = LoggerFactory.getLogger(Handlers.class);
   private static final Handlers instance = new Handlers();
-  private final Map<String, List<HandlerInfo>> handlers;
+  private final AtomicReference<Map<String, DispatchTable>> spaces;
+  private final AtomicLong versions = new AtomicLong();
+  private final Object writeLock = new Object();
 
   private Handlers() {
-    this.handlers = new HashMap<>();
+    this.spaces = new AtomicReference<>(Collections.emptyMap());
   }
 
   private static Handlers getInstance() {
@@ -48,14 +57,146 @@ public class Handlers {
   /**
    * Add a new handler to specified space.
    */
-  public static synchronized void addHandler(String space, Object object) {
-    getInstance().handlers.putIfAbsent(space, new ArrayList<>());
-    List<HandlerInfo> spaceHandlers = getInstance().handlers.get(space);
-    spaceHandlers.add(new HandlerInfo(object));
+  public static void addHandler(String space, Object object) {
+    addHandlers(space, Collections.singletonList(object));
+  }
+
+  /**
+   * Add new handlers to default space.
+   */
+  public static void addHandlers(Collection<?> objects) {
+    addHandlers(DEFAULT_SPACE, objects);
+  }
+
+  /**
+   * Add new handlers to specified space. The dispatch table of the space is built once.
+   */
+  public static void addHandlers(String space, Collection<?> objects) {
+    List<HandlerInfo> added = new ArrayList<>(objects.size());
+    for (Object object : objects) {
+      added.add(new HandlerInfo(object));
+    }
+
+    Handlers instance = getInstance();
+    synchronized (instance.writeLock) {
+      Map<String, DispatchTable> current = instance.spaces.get();
+      DispatchTable table = current.getOrDefault(space, DispatchTable.EMPTY);
+      List<HandlerInfo> spaceHandlers = new ArrayList<>(table.getHandlers());
+      spaceHandlers.addAll(added);
+      instance.publish(current, space,
+          instance.createTable(spaceHandlers, table.getInterceptors().getInterceptors()));
+    }
+  }
+
+  /**
+   * Add an interceptor to default space.
+   */
+  public static void addInterceptor(UpdateInterceptor interceptor) {
+    addInterceptor(DEFAULT_SPACE, interceptor);
+  }
+
+  /**
+   * Add an interceptor to specified space. It is invoked after interceptors which are already
+   * added.
+   */
+  public static void addInterceptor(String space, UpdateInterceptor interceptor) {
+    Handlers instance = getInstance();
+    synchronized (instance.writeLock) {
+      Map<String, DispatchTable> current = instance.spaces.get();
+      DispatchTable table = current.getOrDefault(space, DispatchTable.EMPTY);
+      List<UpdateInterceptor> interceptors =
+          new ArrayList<>(table.getInterceptors().getInterceptors());
+      interceptors.add(interceptor);
+      instance.publish(current, space, instance.createTable(table.getHandlers(), interceptors));
+    }
   }
 
-  public static synchronized void clearHandlers(String space) {
-    getInstance().handlers.remove(space);
+  /**
+   * Start a new version of specified space. Handlers and interceptors are added to the staged
+   * space, which replaces the current one when it is published.
+   */
+  public static StagedSpace stage(String space) {
+    return new StagedSpace(space);
+  }
+
+  /**
+   * Replace all handlers and interceptors of specified space at once.
+   *
+   * @return the replaced table, null if the space was absent
+   */
+  static DispatchTable publish(String space, List<HandlerInfo> handlers,
+      List<UpdateInterceptor> interceptors) {
+    Handlers instance = getInstance();
+    synchronized (instance.writeLock) {
+      return instance.publish(instance.spaces.get(), space,
+          instance.createTable(handlers, interceptors));
+    }
+  }
+
+  /**
+   * Creates a table with the next version. Must be called under the write lock.
+   */
+  private DispatchTable createTable(List<HandlerInfo> handlers,
+      List<UpdateInterceptor> interceptors) {
+    return new DispatchTable(versions.incrementAndGet(), handlers, interceptors);
+  }
+
+  /**
+   * Replaces the table of a space and retires the previous one. Must be called under the write
+   * lock.
+   *
+   * @return the replaced table, null if the space was absent
+   */
+  private DispatchTable publish(Map<String, DispatchTable> current, String space,
+      DispatchTable table) {
+    Map<String, DispatchTable> next = new HashMap<>(current);
+    DispatchTable previous = next.put(space, table);
+    spaces.set(Collections.unmodifiableMap(next));
+    if (previous != null) {
+      previous.retire();
+      LOG.debug("Space {} is updated to version {}", space, table.getVersion());
+    }
+    return previous;
+  }
+
+  /**
+   * Remove all handlers and interceptors of specified space.
+   */
+  public static void clearHandlers(String space) {
+    Handlers instance = getInstance();
+    synchronized (instance.writeLock) {
+      Map<String, DispatchTable> current = instance.spaces.get();
+      if (current.containsKey(space)) {
+        Map<String, DispatchTable> next = new HashMap<>(current);
+        DispatchTable previous = next.remove(space);
+        instance.spaces.set(Collections.unmodifiableMap(next));
+        previous.retire();
+      }
+    }
+  }
+
+  /**
+   * Return the dispatch table for specified space.
+   *
+   * @return empty table if not found
+   */
+  public static DispatchTable getDispatchTable(String space) {
+    DispatchTable table = getInstance().spaces.get().get(space);
+    return table == null ? DispatchTable.EMPTY : table;
+  }
+
+  /**
+   * Return the dispatch table for specified space and mark it as used by an update. The table
+   * must be released with {@link DispatchTable#release()} when the update is handled.
+   */
+  static DispatchTable acquireDispatchTable(String space) {
+    while (true) {
+      DispatchTable table = getDispatchTable(space);
+      if (table.acquire()) {
+        return table;
+      }
+      // The table was replaced and released after it was read, the next read returns a newer one
+    }
   }
 
   /**
@@ -72,19 +213,17 @@ public class Handlers {
    *
    * @return empty list if not found
    */
-  public static synchronized List<HandlerInfo> getHandlers(String space) {
-    List<HandlerInfo> spaceHandlers = getInstance().handlers.get(space);
-    if (spaceHandlers == null) {
-      return Collections.emptyList();
-    }
-    return Collections.unmodifiableList(spaceHandlers);
+  public static List<HandlerInfo> getHandlers(String space) {
+    return getDispatchTable(space).getHandlers();
   }
 
   /**
    * Return presented spaces.
+   *
+   * @return unmodifiable snapshot of space names
    */
   public static Set<String> getSpaces() {
-    return getInstance().handlers.keySet();
+    return getInstance().spaces.get().keySet();
   }
 
   /**
@@ -92,19 +231,7 @@ public class Handlers {
    */
   public static boolean hasAnyMethod(String space, Class<? extends Annotation> method) {
     SubUpdateType methodSubType = SubUpdateType.findByClass(method);
-    Optional<UpdateType> methodType = findParent(method);
-    List<HandlerInfo> spaceHandlers = getInstance().handlers.get(space);
-    if (methodSubType == null || !methodType.isPresent() || spaceHandlers == null) {
-      return false;
-    }
-
-    for (HandlerInfo handler : spaceHandlers) {
-      if (handler.getUpdateTypes().contains(methodType.get()) && handler.getMethodProcessors()
-          .containsValue(methodSubType)) {
-        return true;
-      }
-    }
-    return false;
+    return methodSubType != null && getDispatchTable(space).hasMethods(methodSubType);
   }
 
   @Deprecated
@@ -123,30 +250,17 @@ public class Handlers {
    */
   public static <A extends Annotation> Map<Method, HandlerInfo> findHandlersForRequest(
       String space, Class<A> type, Predicate<A> predicate) {
-    Map<Method, HandlerInfo> result = new HashMap<>();
-    final List<HandlerInfo> handlers = getHandlers(space);
-
-    for (HandlerInfo handlerInfo : handlers) {
-
-      Optional<UpdateType> parentType = findParent(type);
-      if (!parentType.isPresent()) {
-        LOG.error("Can't find the parent type for {}", type);
-        break;
-      }
-
-      if (!handlerInfo.getUpdateTypes().contains(parentType.get())) {
-        continue;
-      }
-
-      Class<?> clazz = handlerInfo.getHandler().getClass();
+    Map<Method, HandlerInfo> result = new LinkedHashMap<>();
+    SubUpdateType subType = SubUpdateType.findByClass(type);
+    if (subType == null) {
+      LOG.error("Can't find the parent type for {}", type);
+      return result;
+    }
 
-      for (Method method : clazz.getMethods()) {
-        A annotation = getMethodAnnotation(type, method.getDeclaringClass(), method);
-        if (annotation != null && predicate.test(annotation)) {
-          result.put(method, handlerInfo);
-        }
+    for (HandlerMethod method : getDispatchTable(space).getMethods(subType)) {
+      if (predicate.test(method.getAnnotation())) {
+        result.put(method.getMethod(), method.getHandlerInfo());
       }
-
     }
 
     return result;
@@ -156,16 +270,4 @@ public class Handlers {
       Class<A> type, Predicate<A> predicate) {
     return findHandlersForRequest(DEFAULT_SPACE, type, predicate);
   }
-
-  private static Optional<UpdateType> findParent(Class<? extends Annotation> type) {
-    return Stream.of(UpdateType.values()).filter(e -> {
-      List<SubUpdateType> subTypes = e.getSubTypes();
-      for (SubUpdateType subUpdateType : subTypes) {
-        if (subUpdateType.getAnnotation() == type) {
-          return true;
-        }
-      }
-      return false;
-    }).findFirst();
-  }
 }
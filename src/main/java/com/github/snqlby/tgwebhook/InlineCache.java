@@ -0,0 +1,311 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.methods.InlineMethod;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+
+/**
+ * Caches answers of an InlineMethod by the normalized query text, the offset and optionally the
+ * user. A cached answer is copied with the id of a new query, so the handler is not invoked.
+ *
+ * <p>Identical queries which arrive while the handler is running wait for its result instead of
+ * invoking it again. Only {@link AnswerInlineQuery} and empty results are cached, failures and
+ * other methods are passed to waiting queries and then forgotten. If the query of a running
+ * handler is superseded, its answer is not cached, even if the handler returns normally, and
+ * waiting queries invoke the handler again.</p>
+ *
+ * <p>The cache is split into segments by key, every segment evicts its least recently used
+ * answers and expired answers are replaced on access.</p>
+ *
+ * @see InlineMethod#cacheTtl()
+ */
+public final class InlineCache {
+
+  private static final int MAX_SEGMENTS = 16;
+
+  private final long ttl;
+  private final boolean perUser;
+  private final Segment[] segments;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a cache.
+   *
+   * @param ttl time to keep an answer after the handler returns it
+   * @param size maximal count of answers, it is rounded up to a multiple of the segment count
+   * @param perUser true to cache answers for every user separately
+   */
+  public InlineCache(long ttl, TimeUnit unit, int size, boolean perUser) {
+    if (ttl <= 0 || size < 1) {
+      throw new IllegalArgumentException("Time to live and size must be positive");
+    }
+    this.ttl = unit.toNanos(ttl);
+    this.perUser = perUser;
+    int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(size));
+    this.segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      segments[i] = new Segment((size + count - 1) / count);
+    }
+  }
+
+  /**
+   * Creates a cache from the values of an annotation.
+   *
+   * @return null if caching is disabled
+   */
+  static InlineCache of(InlineMethod inlineMethod) {
+    return inlineMethod.cacheTtl() > 0 ? new InlineCache(inlineMethod.cacheTtl(),
+        TimeUnit.SECONDS, inlineMethod.cacheSize(), inlineMethod.cachePerUser()) : null;
+  }
+
+  /**
+   * Returns a cached answer to a query or invokes the handler.
+   *
+   * @param token token of the query, null if the query is not superseded
+   * @param executor loads the query again if a load which it waits for is cancelled, usually
+   *     the executor of the resolver
+   * @param loader invokes the handler on a miss
+   * @return result of the handler on a miss, otherwise a CompletionStage of the cached answer
+   */
+  Object get(InlineQuery query, CancellationToken token, Executor executor, Loader loader)
+      throws Exception {
+    String key = createKey(query);
+    Segment segment = segments[spread(key.hashCode()) & (segments.length - 1)];
+    Entry entry = new Entry();
+    Entry cached = segment.putIfAbsent(key, entry, System.nanoTime());
+    if (cached != null) {
+      hits.increment();
+      return join(cached, query, token, executor, loader);
+    }
+
+    misses.increment();
+    Object result;
+    try {
+      result = loader.load();
+    } catch (Exception | Error e) {
+      segment.remove(key, entry);
+      entry.answer.completeExceptionally(e);
+      throw e;
+    }
+
+    if (result instanceof CompletionStage) {
+      ((CompletionStage<?>) result).whenComplete((value, e) -> complete(segment, key, entry,
+          token, value, e));
+    } else {
+      complete(segment, key, entry, token, result, null);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the answer of a running or completed load for another query. If the load is
+   * cancelled, because the query which started it is superseded, the query is loaded again
+   * instead of failing.
+   */
+  private CompletionStage<BotApiMethod> join(Entry cached, InlineQuery query,
+      CancellationToken token, Executor executor, Loader loader) {
+    String queryId = query.getId();
+    CompletableFuture<BotApiMethod> result = new CompletableFuture<>();
+    cached.answer.whenComplete((answer, e) -> {
+      if (e == null) {
+        result.complete(rebind(answer, queryId));
+      } else if (isCancellation(e)) {
+        // The thread of the cancelled load may be interrupted, so the query is loaded on another
+        try {
+          executor.execute(() -> reload(query, token, executor, loader, result));
+        } catch (RejectedExecutionException rejected) {
+          result.completeExceptionally(rejected);
+        }
+      } else {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  private void reload(InlineQuery query, CancellationToken token, Executor executor,
+      Loader loader, CompletableFuture<BotApiMethod> result) {
+    try {
+      Object value = get(query, token, executor, loader);
+      if (value instanceof CompletionStage) {
+        ((CompletionStage<?>) value).whenComplete((answer, e) -> {
+          if (e != null) {
+            result.completeExceptionally(e);
+          } else {
+            result.complete(answer instanceof BotApiMethod ? (BotApiMethod) answer : null);
+          }
+        });
+      } else {
+        result.complete(value instanceof BotApiMethod ? (BotApiMethod) value : null);
+      }
+    } catch (Exception | Error e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  private static boolean isCancellation(Throwable e) {
+    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    return cause instanceof CancellationException || cause instanceof InterruptedException;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Completes a load. An answer to a superseded query may be empty or partial, so it is treated
+   * as a cancellation and waiting queries load their own answers.
+   */
+  private void complete(Segment segment, String key, Entry entry, CancellationToken token,
+      Object value, Throwable e) {
+    if (e == null && token != null && token.isCancelled()) {
+      e = new CancellationException("Query is superseded");
+    }
+    if (e != null) {
+      segment.remove(key, entry);
+      entry.answer.completeExceptionally(e);
+      return;
+    }
+    if (value != null && !(value instanceof AnswerInlineQuery)) {
+      segment.remove(key, entry);
+    }
+    entry.expiresAt = System.nanoTime() + ttl;
+    entry.answer.complete(value instanceof BotApiMethod ? (BotApiMethod) value : null);
+  }
+
+  private String createKey(InlineQuery query) {
+    StringBuilder key = new StringBuilder();
+    if (perUser) {
+      key.append(query.getFrom().getId()).append('\n');
+    }
+    if (query.getOffset() != null) {
+      key.append(query.getOffset());
+    }
+    key.append('\n');
+    appendNormalized(key, query.getQuery());
+    return key.toString();
+  }
+
+  /**
+   * Appends a lower-case text without leading and trailing whitespace, other whitespace is
+   * collapsed into single spaces.
+   */
+  private static void appendNormalized(StringBuilder key, String text) {
+    if (text == null) {
+      return;
+    }
+    boolean space = false;
+    int start = key.length();
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = key.length() > start;
+      } else {
+        if (space) {
+          key.append(' ');
+          space = false;
+        }
+        key.append(c);
+      }
+    }
+    String normalized = key.substring(start).toLowerCase(Locale.ROOT);
+    key.setLength(start);
+    key.append(normalized);
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Copies a cached answer for another query.
+   */
+  private static BotApiMethod rebind(BotApiMethod answer, String queryId) {
+    if (!(answer instanceof AnswerInlineQuery)) {
+      return answer;
+    }
+    AnswerInlineQuery cached = (AnswerInlineQuery) answer;
+    return new AnswerInlineQuery()
+        .setInlineQueryId(queryId)
+        .setResults(cached.getResults())
+        .setCacheTime(cached.getCacheTime())
+        .setPersonal(cached.isPersonal())
+        .setNextOffset(cached.getNextOffset())
+        .setSwitchPmText(cached.getSwitchPmText())
+        .setSwitchPmParameter(cached.getSwitchPmParameter());
+  }
+
+  /**
+   * Invokes a handler.
+   */
+  @FunctionalInterface
+  interface Loader {
+
+    Object load() throws Exception;
+  }
+
+  private static final class Entry {
+
+    private final CompletableFuture<BotApiMethod> answer = new CompletableFuture<>();
+
+    /**
+     * Time of expiration, valid when the answer is completed.
+     */
+    private volatile long expiresAt;
+
+    private boolean isValid(long now) {
+      return !answer.isDone() || expiresAt - now > 0;
+    }
+  }
+
+  private static final class Segment {
+
+    private final Map<String, Entry> entries;
+
+    private Segment(int capacity) {
+      this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, InlineCache.Entry> eldest) {
+          return size() > capacity;
+        }
+      };
+    }
+
+    /**
+     * Adds an entry unless the key has a valid one.
+     *
+     * @return the valid entry, null if the given entry was added
+     */
+    private synchronized Entry putIfAbsent(String key, Entry entry, long now) {
+      Entry current = entries.get(key);
+      if (current != null && current.isValid(now)) {
+        return current;
+      }
+      entries.put(key, entry);
+      return null;
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+      if (entries.get(key) == entry) {
+        entries.remove(key);
+      }
+    }
+  }
+}
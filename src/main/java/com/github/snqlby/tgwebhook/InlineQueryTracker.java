@@ -0,0 +1,51 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.methods.InlineMethod;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+
+/**
+ * Keeps the latest inline query of every user. A new query cancels the token of the previous
+ * one: a queued query is skipped and a running query is asked to stop, its result is dropped.
+ *
+ * @see InlineMethod#supersede()
+ */
+public final class InlineQueryTracker {
+
+  private final ConcurrentMap<Integer, CancellationToken> latest = new ConcurrentHashMap<>();
+  private final LongAdder superseded = new LongAdder();
+
+  InlineQueryTracker() {
+  }
+
+  /**
+   * Makes a query the latest one of its user.
+   *
+   * @return token of the query, it is cancelled by a newer query
+   */
+  CancellationToken register(InlineQuery query) {
+    CancellationToken token = new CancellationToken();
+    CancellationToken previous = latest.put(query.getFrom().getId(), token);
+    if (previous != null) {
+      previous.cancel();
+      superseded.increment();
+    }
+    return token;
+  }
+
+  /**
+   * Forgets a query when it is answered, unless a newer one is registered.
+   */
+  void complete(InlineQuery query, CancellationToken token) {
+    latest.remove(query.getFrom().getId(), token);
+  }
+
+  /**
+   * Returns the count of queries which were cancelled by newer ones.
+   */
+  public long getSupersededCount() {
+    return superseded.sum();
+  }
+}
@@ -0,0 +1,123 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+/**
+ * Immutable interceptors of a space, grouped by {@link UpdateType} when they are registered. An
+ * update passes through a plain array of the interceptors of its type.
+ *
+ * <p>An exception of {@code before} is logged and skips the update, like a rejection, so a
+ * failed access check doesn't let the update through. An exception of {@code after} is logged
+ * and the result is kept.</p>
+ */
+public final class InterceptorChain {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InterceptorChain.class);
+  private static final UpdateInterceptor[] NO_INTERCEPTORS = new UpdateInterceptor[0];
+
+  static final InterceptorChain EMPTY = new InterceptorChain(Collections.emptyList());
+
+  private final List<UpdateInterceptor> interceptors;
+  private final UpdateInterceptor[][] chains;
+
+  InterceptorChain(List<UpdateInterceptor> interceptors) {
+    this.interceptors = Collections.unmodifiableList(new ArrayList<>(interceptors));
+    UpdateType[] types = UpdateType.values();
+    this.chains = new UpdateInterceptor[types.length][];
+    for (UpdateType type : types) {
+      List<UpdateInterceptor> chain = new ArrayList<>();
+      for (UpdateInterceptor interceptor : interceptors) {
+        if (accepts(interceptor, type)) {
+          chain.add(interceptor);
+        }
+      }
+      chains[type.ordinal()] = chain.isEmpty() ? NO_INTERCEPTORS
+          : chain.toArray(NO_INTERCEPTORS);
+    }
+  }
+
+  private static boolean accepts(UpdateInterceptor interceptor, UpdateType type) {
+    AcceptTypes acceptTypes = interceptor.getClass().getAnnotation(AcceptTypes.class);
+    if (acceptTypes == null) {
+      return true;
+    }
+    for (UpdateType accepted : acceptTypes.value()) {
+      if (accepted == type) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns interceptors in registration order.
+   */
+  public List<UpdateInterceptor> getInterceptors() {
+    return interceptors;
+  }
+
+  /**
+   * Checks if an update type has interceptors.
+   *
+   * @param type type of an update, may be null
+   */
+  public boolean intercepts(UpdateType type) {
+    return type != null && chains[type.ordinal()].length != 0;
+  }
+
+  /**
+   * Invokes {@code before} of the interceptors until one of them rejects the update.
+   *
+   * @return count of interceptors which accepted the update
+   */
+  int before(AbsSender bot, Update update, UpdateType type) {
+    UpdateInterceptor[] chain = chains[type.ordinal()];
+    for (int i = 0; i < chain.length; i++) {
+      try {
+        if (!chain[i].before(bot, update, type)) {
+          return i;
+        }
+      } catch (RuntimeException e) {
+        LOG.error("Interceptor {} failed, skipping the update: {}", chain[i].getClass().getName(),
+            e.getMessage());
+        return i;
+      }
+    }
+    return chain.length;
+  }
+
+  /**
+   * Checks if all interceptors accepted an update.
+   *
+   * @param accepted result of {@link #before(AbsSender, Update, UpdateType)}
+   */
+  boolean isAccepted(UpdateType type, int accepted) {
+    return accepted == chains[type.ordinal()].length;
+  }
+
+  /**
+   * Invokes {@code after} of the interceptors which accepted an update, in the reverse order.
+   *
+   * @param accepted result of {@link #before(AbsSender, Update, UpdateType)}
+   */
+  BotApiMethod after(AbsSender bot, Update update, UpdateType type, BotApiMethod result,
+      int accepted) {
+    UpdateInterceptor[] chain = chains[type.ordinal()];
+    for (int i = accepted - 1; i >= 0; i--) {
+      try {
+        result = chain[i].after(bot, update, type, result);
+      } catch (RuntimeException e) {
+        LOG.error("Interceptor {} failed after handlers: {}", chain[i].getClass().getName(),
+            e.getMessage());
+      }
+    }
+    return result;
+  }
+}
@@ -4,6 +4,7 @@ import com.github.snqlby.tgwebhook.methods.CallbackMethod;
 import com.github.snqlby.tgwebhook.methods.CallbackOrigin;
 import com.github.snqlby.tgwebhook.methods.CommandMethod;
 import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import com.github.snqlby.tgwebhook.methods.TextMethod;
 import java.lang.annotation.Annotation;
 import java.util.Arrays;
 import java.util.List;
@@ -44,6 +45,10 @@ public enum Locality {
       MessageMethod method = (MessageMethod) candidateMethod;
       List<Locality> methodLocalities = Arrays.asList(method.locality());
       return methodLocalities.contains(ALL) || methodLocalities.contains(updateLocality);
+    } else if (candidateMethod instanceof TextMethod) {
+      TextMethod method = (TextMethod) candidateMethod;
+      List<Locality> methodLocalities = Arrays.asList(method.locality());
+      return methodLocalities.contains(ALL) || methodLocalities.contains(updateLocality);
 
     }
 
@@ -51,4 +56,31 @@ public enum Locality {
 
     return true;
   }
+
+  /**
+   * Converts accepted localities of a method into a bitmask.
+   *
+   * @param localities values declared by a method's annotation
+   * @return mask with all bits set if ALL is declared
+   * @see #bit(Locality)
+   */
+  public static int mask(Locality[] localities) {
+    int mask = 0;
+    for (Locality locality : localities) {
+      if (locality == ALL) {
+        return -1;
+      }
+      mask |= 1 << locality.ordinal();
+    }
+    return mask;
+  }
+
+  /**
+   * Returns the bit of a received locality which can be tested against {@link #mask(Locality[])}.
+   *
+   * @param updateLocality received locality, may be null if it is unknown
+   */
+  public static int bit(Locality updateLocality) {
+    return 1 << (updateLocality == null ? ALL : updateLocality).ordinal();
+  }
 }
@@ -0,0 +1,201 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import com.github.snqlby.tgwebhook.utils.AsyncExecutors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+/**
+ * Buffers messages of media groups (albums) for a MessageMethod, so the method is invoked once per
+ * group. A group is flushed when no message of it arrives for the quiet window or when it reaches
+ * the size of the largest album.
+ *
+ * <p>Flushes are timed by a shared scheduler and a group has at most one pending task, which is
+ * postponed while the group receives messages. The count of buffered groups is limited, a message
+ * of a group which doesn't fit is not buffered.</p>
+ *
+ * @see MessageMethod#mediaGroupWindow()
+ */
+public final class MediaGroupBuffer {
+
+  /**
+   * Maximal count of messages in a media group.
+   */
+  public static final int MAX_GROUP_SIZE = 10;
+
+  private final long window;
+  private final int maxGroups;
+  private final ScheduledExecutorService scheduler;
+  private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<>();
+  private final AtomicInteger groupCount = new AtomicInteger();
+
+  /**
+   * Creates a buffer.
+   *
+   * @param window time without new messages after which a group is flushed
+   * @param maxGroups maximal count of buffered groups
+   * @param scheduler times flushes, flushed groups are passed to consumers on its thread
+   */
+  public MediaGroupBuffer(long window, TimeUnit unit, int maxGroups,
+      ScheduledExecutorService scheduler) {
+    if (window <= 0 || maxGroups < 1) {
+      throw new IllegalArgumentException("Window and count of groups must be positive");
+    }
+    this.window = unit.toNanos(window);
+    this.maxGroups = maxGroups;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Creates a buffer from the values of an annotation.
+   *
+   * @return null if messages are not aggregated
+   */
+  static MediaGroupBuffer of(MessageMethod messageMethod) {
+    return messageMethod.mediaGroupWindow() > 0 ? new MediaGroupBuffer(
+        messageMethod.mediaGroupWindow(), TimeUnit.MILLISECONDS, messageMethod.mediaGroupLimit(),
+        AsyncExecutors.scheduler()) : null;
+  }
+
+  /**
+   * Adds a message of a media group.
+   *
+   * @param table acquired table which handles the message, it is passed back with the group, so
+   *     messages of a group which spans a replacement of the space release their own tables
+   * @param flush receives messages of the group ordered by id and the tables of all messages,
+   *     only the consumer of the first message of a group is used
+   * @return false if the message is not buffered and must be handled alone
+   */
+  boolean add(Message message, DispatchTable table,
+      BiConsumer<List<Message>, List<DispatchTable>> flush) {
+    String key = message.getChatId() + ":" + message.getMediaGroupId();
+    long now = System.nanoTime();
+    while (true) {
+      Group group = groups.get(key);
+      if (group == null) {
+        if (groupCount.incrementAndGet() > maxGroups) {
+          groupCount.decrementAndGet();
+          return false;
+        }
+        group = new Group(key, flush);
+        Group existing = groups.putIfAbsent(key, group);
+        if (existing != null) {
+          groupCount.decrementAndGet();
+          group = existing;
+        } else {
+          group.add(message, table, now);
+          if (!group.schedule(window)) {
+            // The scheduler is shut down, so the group is flushed at once
+            group.run();
+          }
+          return true;
+        }
+      }
+      if (group.add(message, table, now)) {
+        return true;
+      }
+      // The group is being flushed, the message starts a new one
+    }
+  }
+
+  /**
+   * Returns the count of buffered groups.
+   */
+  public int getGroupCount() {
+    return groupCount.get();
+  }
+
+  private final class Group implements Runnable {
+
+    private final String key;
+    private final BiConsumer<List<Message>, List<DispatchTable>> flush;
+    private final List<Message> messages = new ArrayList<>(MAX_GROUP_SIZE);
+    private final List<DispatchTable> tables = new ArrayList<>(MAX_GROUP_SIZE);
+    private long lastArrival;
+    private boolean closed;
+
+    private Group(String key, BiConsumer<List<Message>, List<DispatchTable>> flush) {
+      this.key = key;
+      this.flush = flush;
+    }
+
+    /**
+     * Adds a message, a full group is flushed without waiting for the window.
+     *
+     * @return false if the group is already flushed
+     */
+    private synchronized boolean add(Message message, DispatchTable table, long now) {
+      if (closed) {
+        return false;
+      }
+      messages.add(message);
+      tables.add(table);
+      lastArrival = now;
+      if (messages.size() == MAX_GROUP_SIZE) {
+        close();
+        try {
+          scheduler.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+          flush();
+        }
+      }
+      return true;
+    }
+
+    private boolean schedule(long delay) {
+      try {
+        scheduler.schedule(this, delay, TimeUnit.NANOSECONDS);
+        return true;
+      } catch (RejectedExecutionException e) {
+        return false;
+      }
+    }
+
+    /**
+     * Flushes the group if no message arrived for the window, otherwise postpones the check.
+     */
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        long remaining = lastArrival + window - System.nanoTime();
+        if (remaining > 0 && schedule(remaining)) {
+          return;
+        }
+        close();
+      }
+      flush();
+    }
+
+    /**
+     * Passes messages of a closed group to the consumer.
+     */
+    private void flush() {
+      List<Message> flushed;
+      synchronized (this) {
+        // Messages may be delivered out of order by concurrent requests
+        messages.sort(Comparator.comparing(Message::getMessageId));
+        flushed = Collections.unmodifiableList(messages);
+      }
+      flush.accept(flushed, Collections.unmodifiableList(tables));
+    }
+
+    private synchronized void close() {
+      closed = true;
+      groups.remove(key, this);
+      groupCount.decrementAndGet();
+    }
+  }
+}
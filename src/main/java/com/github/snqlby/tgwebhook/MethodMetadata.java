@@ -0,0 +1,430 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import com.github.snqlby.tgwebhook.methods.CallbackMethod;
+import com.github.snqlby.tgwebhook.methods.CallbackOrigin;
+import com.github.snqlby.tgwebhook.methods.CommandMethod;
+import com.github.snqlby.tgwebhook.methods.HandlerOrder;
+import com.github.snqlby.tgwebhook.methods.JoinMethod;
+import com.github.snqlby.tgwebhook.methods.JoinReason;
+import com.github.snqlby.tgwebhook.methods.LeaveMethod;
+import com.github.snqlby.tgwebhook.methods.LeaveReason;
+import com.github.snqlby.tgwebhook.methods.MessageFlag;
+import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import com.github.snqlby.tgwebhook.methods.Observe;
+import com.github.snqlby.tgwebhook.methods.TextMethod;
+import com.github.snqlby.tgwebhook.utils.AnnotationUtils;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+/**
+ * Values of a handler method which don't depend on the handler instance: the annotation parsed
+ * into masks and the invoker which receives the instance as the first argument. It is computed
+ * once per handler class and shared by all instances of the class.
+ *
+ * @see HandlerClass
+ * @see HandlerMethod
+ */
+final class MethodMetadata {
+
+  private static final int ANY_REASON = -1;
+  private static final String[] NO_VALUES = new String[0];
+  private static final Pattern[] NO_PATTERNS = new Pattern[0];
+
+  private final Method method;
+  private final SubUpdateType subType;
+  private final Annotation annotation;
+  private final int order;
+  private final boolean observer;
+
+  /**
+   * Generic handle of the method with the handler as the first argument, null if the method is
+   * invoked by generated routes.
+   */
+  private final MethodHandle handle;
+  private final GeneratedRoutes routes;
+  private final int routeIndex;
+
+  /**
+   * Sorted room ids for JoinMethod/LeaveMethod, null if any room is accepted.
+   */
+  private final long[] rooms;
+  private final int reasonMask;
+  private final String command;
+  private final int localityMask;
+  private final int flagMask;
+  private final int originMask;
+  private final String[] callbackData;
+  private final String[] gameShortNames;
+  private final String[] keywords;
+  private final String[] phrases;
+  private final Pattern[] patterns;
+
+  /**
+   * Conversation state of the method, null if the method is selected in any state.
+   */
+  private final String state;
+
+  /**
+   * Types of typed command parameters, null if the method accepts arguments as a list.
+   */
+  private final Class<?>[] argumentTypes;
+
+  /**
+   * Parses a method.
+   *
+   * @param handlerClass class of handler instances, it may override annotations of the method
+   * @param routes generated routes of the class, null to invoke the method with a MethodHandle
+   * @param routeIndex index of the method in the generated routes
+   */
+  MethodMetadata(Class<?> handlerClass, Method method, SubUpdateType subType,
+      Annotation annotation, GeneratedRoutes routes, int routeIndex) {
+    this.method = method;
+    this.subType = subType;
+    this.annotation = annotation;
+    this.routes = routes;
+    this.routeIndex = routeIndex;
+    this.handle = routes == null ? unreflect(method, subType) : null;
+
+    HandlerOrder handlerOrder = findAnnotation(HandlerOrder.class, handlerClass, method);
+    this.order = handlerOrder == null ? HandlerOrder.DEFAULT : handlerOrder.value();
+    this.observer = findAnnotation(Observe.class, handlerClass, method) != null;
+
+    if (annotation instanceof JoinMethod) {
+      JoinMethod joinMethod = (JoinMethod) annotation;
+      this.rooms = parseRooms(joinMethod.room(), JoinMethod.ANY);
+      this.reasonMask = parseReasons(joinMethod.reason(), JoinReason.ALL);
+    } else if (annotation instanceof LeaveMethod) {
+      LeaveMethod leaveMethod = (LeaveMethod) annotation;
+      this.rooms = parseRooms(leaveMethod.room(), LeaveMethod.ANY);
+      this.reasonMask = parseReasons(leaveMethod.reason(), LeaveReason.ALL);
+    } else {
+      this.rooms = null;
+      this.reasonMask = ANY_REASON;
+    }
+
+    if (annotation instanceof CommandMethod) {
+      CommandMethod commandMethod = (CommandMethod) annotation;
+      this.command = commandMethod.command();
+      this.argumentTypes = findArgumentTypes(method);
+    } else {
+      this.command = null;
+      this.argumentTypes = null;
+    }
+
+    if (annotation instanceof CallbackMethod) {
+      CallbackMethod callbackMethod = (CallbackMethod) annotation;
+      this.callbackData = callbackMethod.data();
+      this.gameShortNames = callbackMethod.game_short_name();
+      this.originMask = CallbackOrigin.mask(callbackMethod.origin());
+    } else {
+      this.callbackData = NO_VALUES;
+      this.gameShortNames = NO_VALUES;
+      this.originMask = -1;
+    }
+
+    if (annotation instanceof TextMethod) {
+      TextMethod textMethod = (TextMethod) annotation;
+      this.keywords = textMethod.keyword();
+      this.phrases = textMethod.phrase();
+      this.patterns = compilePatterns(textMethod.regex());
+    } else {
+      this.keywords = NO_VALUES;
+      this.phrases = NO_VALUES;
+      this.patterns = NO_PATTERNS;
+    }
+
+    this.flagMask = annotation instanceof MessageMethod
+        ? MessageFlag.mask(((MessageMethod) annotation).flag()) : -1;
+    this.localityMask = parseLocalities(annotation);
+    this.state = parseState(annotation);
+  }
+
+  /**
+   * Finds an annotation of a method or, if the method doesn't have it, of the handler class.
+   */
+  private static <A extends Annotation> A findAnnotation(Class<A> annotationClass,
+      Class<?> handlerClass, Method method) {
+    A annotation = AnnotationUtils.getMethodAnnotation(annotationClass, handlerClass, method);
+    return annotation != null ? annotation : handlerClass.getAnnotation(annotationClass);
+  }
+
+  /**
+   * Converts localities of CommandMethod, MessageMethod, TextMethod and CallbackMethod into a
+   * mask, like {@link Locality#accept(Locality, Annotation)} tests them.
+   */
+  private static int parseLocalities(Annotation annotation) {
+    if (annotation instanceof CommandMethod) {
+      return Locality.mask(((CommandMethod) annotation).locality());
+    } else if (annotation instanceof MessageMethod) {
+      return Locality.mask(((MessageMethod) annotation).locality());
+    } else if (annotation instanceof TextMethod) {
+      return Locality.mask(((TextMethod) annotation).locality());
+    } else if (annotation instanceof CallbackMethod) {
+      CallbackMethod callbackMethod = (CallbackMethod) annotation;
+      // Locality is checked only for methods which explicitly accept CallbackOrigin.MESSAGE
+      for (CallbackOrigin origin : callbackMethod.origin()) {
+        if (origin == CallbackOrigin.MESSAGE) {
+          return Locality.mask(callbackMethod.locality());
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the conversation state of CommandMethod, MessageMethod, TextMethod and CallbackMethod.
+   *
+   * @return null if the method is selected in any state
+   */
+  private static String parseState(Annotation annotation) {
+    String state = null;
+    if (annotation instanceof CommandMethod) {
+      state = ((CommandMethod) annotation).state();
+    } else if (annotation instanceof MessageMethod) {
+      state = ((MessageMethod) annotation).state();
+    } else if (annotation instanceof TextMethod) {
+      state = ((TextMethod) annotation).state();
+    } else if (annotation instanceof CallbackMethod) {
+      state = ((CallbackMethod) annotation).state();
+    }
+    return state == null || state.isEmpty() ? null : state;
+  }
+
+  /**
+   * Finds typed parameters of a command method, which follow the bot and the message.
+   *
+   * @return null if the method accepts arguments as a list
+   * @throws IllegalArgumentException if a parameter type is not supported
+   */
+  static Class<?>[] findArgumentTypes(Method method) {
+    Class<?>[] types = method.getParameterTypes();
+    if (types.length <= 2 || types[2].isAssignableFrom(CommandArguments.class)) {
+      return null;
+    }
+
+    Class<?>[] result = Arrays.copyOfRange(types, 2, types.length);
+    for (Class<?> type : result) {
+      if (!CommandArguments.isSupported(type)) {
+        throw new IllegalArgumentException(String.format(
+            "Method \"%s\" declares unsupported command argument %s", method.toGenericString(),
+            type.getName()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adapts the method to the fixed invocation signature: the handler followed by
+   * {@link HandlerMethod#MAX_ARGUMENTS} arguments.
+   *
+   * <p>The method may declare fewer parameters, trailing arguments are dropped in this case.
+   * Typed parameters of a command method are converted from {@link CommandArguments}, which is
+   * passed as the third argument.</p>
+   */
+  static MethodHandle unreflect(Method method, SubUpdateType subType) {
+    Class<?>[] argumentTypes =
+        subType == SubUpdateType.COMMAND ? findArgumentTypes(method) : null;
+    if (argumentTypes == null && method.getParameterCount() > HandlerMethod.MAX_ARGUMENTS) {
+      throw new IllegalArgumentException(String.format(
+          "Method \"%s\" declares more than %d parameters", method.toGenericString(),
+          HandlerMethod.MAX_ARGUMENTS));
+    }
+
+    MethodHandle handle;
+    try {
+      if (!method.isAccessible()) {
+        method.setAccessible(true);
+      }
+      handle = MethodHandles.lookup().unreflect(method);
+    } catch (IllegalAccessException | RuntimeException e) {
+      throw new IllegalArgumentException(String.format(
+          "Method \"%s\" is not accessible", method.toGenericString()), e);
+    }
+
+    if (argumentTypes != null) {
+      handle = convertArguments(handle, argumentTypes);
+    }
+    int parameterCount = handle.type().parameterCount();
+    return MethodHandles.dropArguments(
+        handle.asType(MethodType.genericMethodType(parameterCount)), parameterCount,
+        Collections.nCopies(HandlerMethod.MAX_ARGUMENTS + 1 - parameterCount, Object.class));
+  }
+
+  /**
+   * Replaces typed parameters with a single CommandArguments parameter. Values are converted by
+   * getters of CommandArguments, without boxing of primitives.
+   *
+   * @param handle handle of a method with the handler, the bot and the message as leading
+   *     parameters
+   */
+  private static MethodHandle convertArguments(MethodHandle handle, Class<?>[] argumentTypes) {
+    MethodHandle[] converters = new MethodHandle[argumentTypes.length];
+    for (int i = 0; i < argumentTypes.length; i++) {
+      Class<?> type = argumentTypes[i];
+      String getter;
+      Class<?> getterType;
+      if (type == String.class) {
+        getter = i == argumentTypes.length - 1 ? "getRest" : "get";
+        getterType = String.class;
+      } else if (type == long.class || type == Long.class) {
+        getter = "getLong";
+        getterType = long.class;
+      } else if (type == int.class || type == Integer.class) {
+        getter = "getInt";
+        getterType = int.class;
+      } else if (type == double.class || type == Double.class) {
+        getter = "getDouble";
+        getterType = double.class;
+      } else {
+        getter = "getBoolean";
+        getterType = boolean.class;
+      }
+
+      try {
+        converters[i] = MethodHandles.insertArguments(MethodHandles.publicLookup().findVirtual(
+            CommandArguments.class, getter, MethodType.methodType(getterType, int.class)), 1, i)
+            .asType(MethodType.methodType(type, CommandArguments.class));
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Cannot find CommandArguments." + getter, e);
+      }
+    }
+
+    MethodType type = handle.type();
+    int[] reorder = new int[type.parameterCount()];
+    for (int i = 0; i < reorder.length; i++) {
+      reorder[i] = Math.min(i, 3);
+    }
+    return MethodHandles.permuteArguments(MethodHandles.filterArguments(handle, 3, converters),
+        MethodType.methodType(type.returnType(), type.parameterType(0), type.parameterType(1),
+            type.parameterType(2), CommandArguments.class), reorder);
+  }
+
+  /**
+   * Compiles regular expressions of TextMethod.
+   *
+   * @throws java.util.regex.PatternSyntaxException if an expression is invalid
+   */
+  private static Pattern[] compilePatterns(String[] expressions) {
+    Pattern[] result = new Pattern[expressions.length];
+    for (int i = 0; i < expressions.length; i++) {
+      result[i] = Pattern.compile(expressions[i]);
+    }
+    return result;
+  }
+
+  private static long[] parseRooms(long[] values, long any) {
+    for (long value : values) {
+      if (value == any) {
+        return null;
+      }
+    }
+    long[] result = values.clone();
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static <E extends Enum<E>> int parseReasons(E[] values, E all) {
+    int mask = 0;
+    for (E value : values) {
+      if (value == all) {
+        return ANY_REASON;
+      }
+      mask |= 1 << value.ordinal();
+    }
+    return mask;
+  }
+
+  /**
+   * Invokes the method of a handler instance.
+   */
+  Object invoke(Object handler, Object arg0, Object arg1, Object arg2, Object arg3)
+      throws Throwable {
+    if (routes != null) {
+      return routes.invoke(routeIndex, handler, arg0, arg1, arg2, arg3);
+    }
+    return (Object) handle.invokeExact(handler, arg0, arg1, arg2, arg3);
+  }
+
+  boolean acceptsRoom(long roomId) {
+    return rooms == null || Arrays.binarySearch(rooms, roomId) >= 0;
+  }
+
+  boolean acceptsReason(Enum<?> reason) {
+    return (reasonMask & (1 << reason.ordinal())) != 0;
+  }
+
+  boolean acceptsLocality(int localityBit) {
+    return (localityMask & localityBit) != 0;
+  }
+
+  boolean acceptsFlags(int flags) {
+    return (flagMask & flags) != 0;
+  }
+
+  boolean acceptsOrigin(int originBit) {
+    return (originMask & originBit) != 0;
+  }
+
+  boolean acceptsArguments(CommandArguments arguments) {
+    return argumentTypes == null || arguments.matches(argumentTypes);
+  }
+
+  boolean acceptsState(String current) {
+    return state == null || state.equals(current);
+  }
+
+  Method getMethod() {
+    return method;
+  }
+
+  SubUpdateType getSubType() {
+    return subType;
+  }
+
+  Annotation getAnnotation() {
+    return annotation;
+  }
+
+  int getOrder() {
+    return order;
+  }
+
+  boolean isObserver() {
+    return observer;
+  }
+
+  String getCommand() {
+    return command;
+  }
+
+  String[] getCallbackData() {
+    return callbackData;
+  }
+
+  String[] getGameShortNames() {
+    return gameShortNames;
+  }
+
+  String[] getKeywords() {
+    return keywords;
+  }
+
+  String[] getPhrases() {
+    return phrases;
+  }
+
+  Pattern[] getPatterns() {
+    return patterns;
+  }
+
+  String getState() {
+    return state;
+  }
+}
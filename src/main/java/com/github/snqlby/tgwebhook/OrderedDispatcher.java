@@ -0,0 +1,233 @@
+package com.github.snqlby.tgwebhook;
+
+import com.github.snqlby.tgwebhook.utils.AsyncExecutors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Processes updates of different chats in parallel, but updates of the same chat one by one in
+ * the order of submission.
+ *
+ * <p>Every update is assigned to one of serial lanes by its chat id. Updates without a chat, such
+ * as inline queries, are assigned by the user id. A lane doesn't own a thread, it is drained by a
+ * single task of the executor while it has queued updates.</p>
+ *
+ * <pre>{@code
+ * OrderedDispatcher dispatcher = new OrderedDispatcher(new RequestResolver(bot), 64);
+ * dispatcher.submit(update).thenAccept(method -> ...);
+ * }</pre>
+ */
+public class OrderedDispatcher {
+
+  private final Handler handler;
+  private final Executor executor;
+  private final Lane[] lanes;
+
+  /**
+   * Creates a dispatcher which uses the default executor.
+   *
+   * @param handler processes updates, usually {@link RequestResolver}
+   * @param lanes count of serial lanes, limits the parallelism
+   * @see AsyncExecutors#defaultExecutor()
+   */
+  public OrderedDispatcher(Handler handler, int lanes) {
+    this(handler, lanes, AsyncExecutors.defaultExecutor());
+  }
+
+  /**
+   * Creates a dispatcher.
+   *
+   * @param handler processes updates, usually {@link RequestResolver}
+   * @param lanes count of serial lanes, limits the parallelism
+   * @param executor runs lanes
+   */
+  public OrderedDispatcher(Handler handler, int lanes, Executor executor) {
+    if (lanes < 1) {
+      throw new IllegalArgumentException("Lanes count must be positive: " + lanes);
+    }
+    this.handler = handler;
+    this.executor = executor;
+    this.lanes = new Lane[lanes];
+    for (int i = 0; i < lanes; i++) {
+      this.lanes[i] = new Lane();
+    }
+  }
+
+  /**
+   * Queues an update to its lane.
+   *
+   * @return result of the handler, completes exceptionally if the handler fails
+   */
+  public CompletableFuture<BotApiMethod> submit(Update update) {
+    Task task = new Task(update);
+    lanes[findLane(update)].add(task);
+    return task.result;
+  }
+
+  /**
+   * Queues updates to their lanes. Each lane is scheduled once per batch.
+   *
+   * @return results in the order of the updates
+   */
+  public List<CompletableFuture<BotApiMethod>> submitAll(List<Update> updates) {
+    List<CompletableFuture<BotApiMethod>> result = new ArrayList<>(updates.size());
+    List<List<Task>> batches = new ArrayList<>(lanes.length);
+    for (int i = 0; i < lanes.length; i++) {
+      batches.add(null);
+    }
+
+    for (Update update : updates) {
+      Task task = new Task(update);
+      int lane = findLane(update);
+      List<Task> batch = batches.get(lane);
+      if (batch == null) {
+        batch = new ArrayList<>();
+        batches.set(lane, batch);
+      }
+      batch.add(task);
+      result.add(task.result);
+    }
+
+    for (int i = 0; i < lanes.length; i++) {
+      List<Task> batch = batches.get(i);
+      if (batch != null) {
+        lanes[i].addAll(batch);
+      }
+    }
+    return result;
+  }
+
+  public int getLaneCount() {
+    return lanes.length;
+  }
+
+  /**
+   * Returns count of queued and running updates of a lane.
+   */
+  public int getQueueDepth(int lane) {
+    return lanes[lane].size.get();
+  }
+
+  /**
+   * Returns count of queued and running updates per lane.
+   */
+  public int[] getQueueDepths() {
+    int[] result = new int[lanes.length];
+    for (int i = 0; i < lanes.length; i++) {
+      result[i] = lanes[i].size.get();
+    }
+    return result;
+  }
+
+  private int findLane(Update update) {
+    long key = findKey(update);
+    int hash = (int) (key ^ (key >>> 32));
+    hash ^= hash >>> 16;
+    return Math.floorMod(hash * 0x9E3779B9, lanes.length);
+  }
+
+  /**
+   * Returns the key which defines the order of an update: chat id if the update belongs to a
+   * chat, user id for inline and payment queries, update id otherwise.
+   */
+  static long findKey(Update update) {
+    Message message = null;
+    if (update.hasMessage()) {
+      message = update.getMessage();
+    } else if (update.hasEditedMessage()) {
+      message = update.getEditedMessage();
+    } else if (update.hasChannelPost()) {
+      message = update.getChannelPost();
+    } else if (update.hasEditedChannelPost()) {
+      message = update.getEditedChannelPost();
+    } else if (update.hasCallbackQuery()) {
+      CallbackQuery query = update.getCallbackQuery();
+      message = query.getMessage();
+      if (message == null) {
+        return query.getFrom().getId();
+      }
+    } else if (update.hasInlineQuery()) {
+      return update.getInlineQuery().getFrom().getId();
+    } else if (update.hasChosenInlineQuery()) {
+      return update.getChosenInlineQuery().getFrom().getId();
+    } else if (update.hasShippingQuery()) {
+      return update.getShippingQuery().getFrom().getId();
+    } else if (update.hasPreCheckoutQuery()) {
+      return update.getPreCheckoutQuery().getFrom().getId();
+    }
+
+    if (message != null && message.getChatId() != null) {
+      return message.getChatId();
+    }
+    Integer updateId = update.getUpdateId();
+    return updateId == null ? 0 : updateId;
+  }
+
+  private final class Task {
+
+    private final Update update;
+    private final CompletableFuture<BotApiMethod> result = new CompletableFuture<>();
+
+    private Task(Update update) {
+      this.update = update;
+    }
+
+    private void run() {
+      try {
+        result.complete(handler.handleRequest(update));
+      } catch (RuntimeException | Error e) {
+        result.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Serial queue of tasks. The size is incremented after tasks are queued, so a positive size
+   * guarantees that the drain loop finds a task.
+   */
+  private final class Lane implements Runnable {
+
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private void add(Task task) {
+      tasks.add(task);
+      if (size.getAndIncrement() == 0) {
+        schedule();
+      }
+    }
+
+    private void addAll(List<Task> batch) {
+      tasks.addAll(batch);
+      if (size.getAndAdd(batch.size()) == 0) {
+        schedule();
+      }
+    }
+
+    private void schedule() {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // The lane must be drained anyway, otherwise it stays blocked forever
+        run();
+      }
+    }
+
+    @Override
+    public void run() {
+      do {
+        tasks.poll().run();
+      } while (size.decrementAndGet() != 0);
+    }
+  }
+}
@@ -1,35 +1,27 @@
 package com.github.snqlby.tgwebhook;
 
-import static com.github.snqlby.tgwebhook.Handlers.hasAnyMethod;
 import static com.github.snqlby.tgwebhook.methods.CallbackOrigin.findOrigin;
 
-import com.github.snqlby.tgwebhook.methods.CallbackMethod;
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
 import com.github.snqlby.tgwebhook.methods.CallbackOrigin;
-import com.github.snqlby.tgwebhook.methods.ChannelPostMethod;
-import com.github.snqlby.tgwebhook.methods.ChosenInlineMethod;
-import com.github.snqlby.tgwebhook.methods.CommandMethod;
-import com.github.snqlby.tgwebhook.methods.EditedChannelPostMethod;
-import com.github.snqlby.tgwebhook.methods.EditedMessageMethod;
-import com.github.snqlby.tgwebhook.methods.InlineMethod;
-import com.github.snqlby.tgwebhook.methods.JoinMethod;
 import com.github.snqlby.tgwebhook.methods.JoinReason;
-import com.github.snqlby.tgwebhook.methods.LeaveMethod;
 import com.github.snqlby.tgwebhook.methods.LeaveReason;
 import com.github.snqlby.tgwebhook.methods.MessageFlag;
-import com.github.snqlby.tgwebhook.methods.MessageMethod;
-import com.github.snqlby.tgwebhook.methods.PreCheckoutMethod;
-import com.github.snqlby.tgwebhook.methods.ShippingMethod;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Arrays;
+import com.github.snqlby.tgwebhook.metrics.DispatchMetrics;
+import com.github.snqlby.tgwebhook.metrics.DispatchResult;
+import com.github.snqlby.tgwebhook.sender.FloodControlSender;
+import com.github.snqlby.tgwebhook.state.ConversationStore;
+import com.github.snqlby.tgwebhook.utils.AsyncExecutors;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
 import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.LongStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.telegrambots.bots.TelegramWebhookBot;
@@ -38,6 +30,9 @@ import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 public class RequestResolver implements Handler {
 
@@ -45,6 +40,11 @@ public class RequestResolver implements Handler {
   private final String space;
 
   private TelegramWebhookBot bot;
+  private final AbsSender sender;
+  private final Executor executor;
+  private final DispatchMetrics metrics;
+  private final UpdateDeduplicator deduplicator;
+  private final ConversationStore conversations;
 
   /**
    * Provides a possibility to use custom space for handles.
@@ -52,8 +52,7 @@ public class RequestResolver implements Handler {
    * <p>It can be used to support multiple bots per application.</p>
    */
   public RequestResolver(String space, TelegramWebhookBot bot) {
-    this.space = space;
-    this.bot = bot;
+    this(builder(space, bot));
   }
 
   /**
@@ -63,59 +62,391 @@ public class RequestResolver implements Handler {
     this(Handlers.DEFAULT_SPACE, bot);
   }
 
+  private RequestResolver(Builder builder) {
+    this.space = builder.space;
+    this.bot = builder.bot;
+    this.sender = builder.sender;
+    this.executor = builder.executor;
+    this.metrics = builder.metrics;
+    this.deduplicator = builder.deduplicator;
+    this.conversations = builder.conversations;
+  }
+
+  /**
+   * Starts a resolver with options, for example an executor or metrics. By default handlers
+   * receive the bot, asynchronous requests run on {@link AsyncExecutors#defaultExecutor()} and
+   * metrics, deduplication and conversation states are disabled.
+   *
+   * <pre>{@code
+   * RequestResolver resolver = RequestResolver.builder(space, bot)
+   *     .setExecutor(executor)
+   *     .setDeduplicator(new UpdateDeduplicator())
+   *     .build();
+   * }</pre>
+   */
+  public static Builder builder(String space, TelegramWebhookBot bot) {
+    return new Builder(space, bot);
+  }
+
+  /**
+   * Processes an update synchronously. If a handler returns a CompletionStage, the method waits
+   * for its result.
+   *
+   * @param update received update
+   * @return BotApiMethod object or null
+   */
+  @Override
+  public BotApiMethod handleRequest(Update update) {
+    if (isDuplicate(update)) {
+      return null;
+    }
+    DispatchTable table = Handlers.acquireDispatchTable(space);
+    try {
+      InterceptorChain interceptors = table.getInterceptors();
+      UpdateType type = interceptors == InterceptorChain.EMPTY ? null : UpdateType.of(update);
+      if (!interceptors.intercepts(type)) {
+        return await(resolve(table, update, null));
+      }
+
+      int accepted = interceptors.before(sender, update, type);
+      BotApiMethod result =
+          interceptors.isAccepted(type, accepted) ? await(resolve(table, update, null)) : null;
+      return interceptors.after(sender, update, type, result, accepted);
+    } finally {
+      table.release();
+    }
+  }
+
+  /**
+   * Processes an update on the executor of the resolver, so the calling thread is not blocked by
+   * handlers. Handlers may return a CompletionStage, it is not awaited by any thread.
+   *
+   * <p>The update is dispatched with the handlers which are registered on its arrival, even if
+   * the space is replaced while it waits for the executor.</p>
+   *
+   * @param update received update
+   * @return result of a handler, completes with null if there is no result
+   */
+  public CompletionStage<BotApiMethod> handleRequestAsync(Update update) {
+    if (isDuplicate(update)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    DispatchTable table = Handlers.acquireDispatchTable(space);
+    CompletableFuture<BotApiMethod> result;
+    try {
+      result = dispatchAsync(table, update);
+    } catch (RuntimeException | Error e) {
+      table.release();
+      throw e;
+    }
+    return result.whenComplete((value, e) -> table.release());
+  }
+
+  private CompletableFuture<BotApiMethod> dispatchAsync(DispatchTable table, Update update) {
+    CancellationToken token =
+        update.hasInlineQuery() ? registerInlineQuery(table, update.getInlineQuery()) : null;
+    InterceptorChain interceptors = table.getInterceptors();
+    UpdateType type = interceptors == InterceptorChain.EMPTY ? null : UpdateType.of(update);
+    if (!interceptors.intercepts(type)) {
+      return CompletableFuture.supplyAsync(() -> resolve(table, update, token), executor)
+          .thenCompose(this::toStage);
+    }
+
+    return CompletableFuture.supplyAsync(() -> interceptors.before(sender, update, type), executor)
+        .thenCompose(accepted -> {
+          CompletionStage<BotApiMethod> result = interceptors.isAccepted(type, accepted)
+              ? toStage(resolve(table, update, token)) : CompletableFuture.completedFuture(null);
+          return result.thenApply(value -> interceptors.after(sender, update, type, value,
+              accepted));
+        });
+  }
+
   @Override
   public BotApiMethod onMessage(Update update) {
+    return resolveWith(update, this::resolveMessage);
+  }
+
+  @Override
+  public BotApiMethod onEditedMessage(Update update) {
+    return resolveWith(update, this::resolveEditedMessage);
+  }
+
+  @Override
+  public BotApiMethod onCallbackQuery(Update update) {
+    return resolveWith(update, this::resolveCallbackQuery);
+  }
+
+  @Override
+  public BotApiMethod onInlineQuery(Update update) {
+    return resolveWith(update, (table, value) -> resolveInlineQuery(table, value, null));
+  }
+
+  @Override
+  public BotApiMethod onChosenInlineQuery(Update update) {
+    return resolveWith(update, this::resolveChosenInlineQuery);
+  }
+
+  @Override
+  public BotApiMethod onChannelPost(Update update) {
+    return resolveWith(update, this::resolveChannelPost);
+  }
+
+  @Override
+  public BotApiMethod onEditedChannelPost(Update update) {
+    return resolveWith(update, this::resolveEditedChannelPost);
+  }
+
+  @Override
+  public BotApiMethod onShippingQuery(Update update) {
+    return resolveWith(update, this::resolveShippingQuery);
+  }
+
+  @Override
+  public BotApiMethod onPreCheckoutQuery(Update update) {
+    return resolveWith(update, this::resolvePreCheckoutQuery);
+  }
+
+  /**
+   * Resolves an update with the current table of the space and waits for the result.
+   */
+  private BotApiMethod resolveWith(Update update,
+      BiFunction<DispatchTable, Update, Object> resolver) {
+    DispatchTable table = Handlers.acquireDispatchTable(space);
+    try {
+      return await(resolver.apply(table, update));
+    } finally {
+      table.release();
+    }
+  }
+
+  /**
+   * Dispatches an update like {@link Handler#handleRequest(Update)}, but keeps an asynchronous
+   * result of a handler as is.
+   *
+   * @param table acquired table of the space
+   * @param token token of an inline query registered on arrival, null to register it now
+   */
+  private Object resolve(DispatchTable table, Update update, CancellationToken token) {
+    if (update.hasChosenInlineQuery()) {
+      return resolveChosenInlineQuery(table, update);
+    } else if (update.hasInlineQuery()) {
+      return resolveInlineQuery(table, update, token);
+    } else if (update.hasCallbackQuery()) {
+      return resolveCallbackQuery(table, update);
+    } else if (update.hasEditedMessage()) {
+      return resolveEditedMessage(table, update);
+    } else if (update.hasEditedChannelPost()) {
+      return resolveEditedChannelPost(table, update);
+    } else if (update.hasChannelPost()) {
+      return resolveChannelPost(table, update);
+    } else if (update.hasShippingQuery()) {
+      return resolveShippingQuery(table, update);
+    } else if (update.hasPreCheckoutQuery()) {
+      return resolvePreCheckoutQuery(table, update);
+    } else if (update.hasMessage()) {
+      return resolveMessage(table, update);
+    }
+    return null;
+  }
+
+  private boolean isDuplicate(Update update) {
+    if (deduplicator == null || deduplicator.accept(update)) {
+      return false;
+    }
+    LOG.debug("Update {} is already handled, skipping", update.getUpdateId());
+    return true;
+  }
+
+  /**
+   * Converts a result of a handler to BotApiMethod, waiting for it if necessary.
+   */
+  private BotApiMethod await(Object result) {
+    if (result instanceof CompletionStage) {
+      try {
+        return toMethod(((CompletionStage<?>) result).toCompletableFuture().join());
+      } catch (CompletionException | CancellationException e) {
+        LOG.error("Handler completed exceptionally: {}", e.getMessage());
+        return null;
+      }
+    }
+    return toMethod(result);
+  }
+
+  private CompletionStage<BotApiMethod> toStage(Object result) {
+    if (result instanceof CompletionStage) {
+      return ((CompletionStage<?>) result).handle((value, e) -> {
+        if (e != null) {
+          LOG.error("Handler completed exceptionally: {}", e.getMessage());
+          return null;
+        }
+        return toMethod(value);
+      });
+    }
+    return CompletableFuture.completedFuture(toMethod(result));
+  }
+
+  /**
+   * Casts a result of a handler to BotApiMethod.
+   *
+   * @return null if the result is not a BotApiMethod
+   */
+  private static BotApiMethod toMethod(Object result) {
+    if (result == null || result instanceof BotApiMethod) {
+      return (BotApiMethod) result;
+    }
+    LOG.error("Handler returned {} instead of BotApiMethod", result.getClass().getName());
+    return null;
+  }
+
+  private Object resolveMessage(DispatchTable table, Update update) {
+    long started = startTimer();
     Message message = update.getMessage();
     Locality updateLocality = findMessageLocality(message);
-    if (message.isCommand() && hasAnyMethod(space, CommandMethod.class)) {
-      List<String> args = parseArgs(removeCommandPostfix(message.getText()));
-      String command = args.remove(0);
-
-      return invokeMethod(CommandMethod.class,
-          e -> e.command().equals(command) && Locality.accept(updateLocality, e), bot,
-          update.getMessage(), args);
-    } else if (message.getNewChatMembers() != null && hasAnyMethod(space, JoinMethod.class)) {
+    String state = findState(table, message.getChatId(), message.getFrom());
+    if (message.isCommand() && table.hasMethods(SubUpdateType.COMMAND)) {
+      String text = message.getText();
+      int argsStart = findCommandEnd(text);
+      HandlerMethod[] candidates = table.getCommands()
+          .find(text, 0, removeCommandPostfix(text, argsStart));
+      CommandArguments args = CommandArguments.parse(text, argsStart);
+
+      final int localityBit = Locality.bit(updateLocality);
+      return invokeMethod(table, SubUpdateType.COMMAND, candidates,
+          e -> e.acceptsState(state) && e.acceptsLocality(localityBit)
+              && e.acceptsArguments(args), message, args, started);
+    } else if (!message.getNewChatMembers().isEmpty() && table.hasMethods(SubUpdateType.JOIN)) {
       final long roomId = message.getChatId();
       JoinReason reason = findJoinReason(message);
-      return invokeMethod(JoinMethod.class,
-          e -> LongStream.of(e.room()).anyMatch(v -> v == JoinMethod.ANY || v == roomId)
-              && JoinReason.accept(reason, e),
-          bot, message, reason);
+      return invokeMethod(table, SubUpdateType.JOIN,
+          e -> e.acceptsRoom(roomId) && e.acceptsReason(reason), message, reason, started);
 
-    } else if (message.getLeftChatMember() != null && hasAnyMethod(space, LeaveMethod.class)) {
+    } else if (message.getLeftChatMember() != null && table.hasMethods(SubUpdateType.LEAVE)) {
       final long roomId = message.getChatId();
       LeaveReason reason = findLeaveReason(message);
-      return invokeMethod(LeaveMethod.class,
-          e -> LongStream.of(e.room()).anyMatch(v -> v == LeaveMethod.ANY || v == roomId)
-              && LeaveReason.accept(reason, e),
-          bot, message, reason);
+      return invokeMethod(table, SubUpdateType.LEAVE,
+          e -> e.acceptsRoom(roomId) && e.acceptsReason(reason), message, reason, started);
+
+    }
 
+    final int localityBit = Locality.bit(updateLocality);
+    if (message.hasText() && table.hasMethods(SubUpdateType.TEXT)) {
+      TextMatches matched = findTextHandler(table, message, state, localityBit);
+      if (matched != null) {
+        // Observers of messages see the message even though a TextMethod answers it
+        if (table.hasMethods(SubUpdateType.MESSAGE)) {
+          final int flags = MessageFlag.findFlags(message);
+          invokeObservers(table, SubUpdateType.MESSAGE,
+              e -> e.acceptsState(state) && e.acceptsLocality(localityBit)
+                  && e.acceptsFlags(flags), message);
+        }
+        return invokeHandler(SubUpdateType.TEXT, matched.getMethod(), 1, message, matched, null,
+            started);
+      }
     }
 
-    return invokeMethod(MessageMethod.class,
-        e -> Locality.accept(updateLocality, e) && MessageFlag.acceptAny(message, e), bot,
-        update.getMessage());
+    if (!table.hasMethods(SubUpdateType.MESSAGE)) {
+      return invokeHandler(SubUpdateType.MESSAGE, null, 0, message, null, null, started);
+    }
+    final int flags = MessageFlag.findFlags(message);
+    return invokeMethod(table, SubUpdateType.MESSAGE,
+        e -> e.acceptsState(state) && e.acceptsLocality(localityBit) && e.acceptsFlags(flags),
+        message, null, started);
   }
 
-  @Override
-  public BotApiMethod onEditedMessage(Update update) {
-    return invokeMethod(EditedMessageMethod.class, bot, update.getMessage());
+  /**
+   * Scans the text of a message for TextMethod triggers once and invokes matched observers.
+   *
+   * @return matches of the first answering method, null if there is no such method
+   */
+  private TextMatches findTextHandler(DispatchTable table, Message message, String state,
+      int localityBit) {
+    TextMatches handler = null;
+    int found = 0;
+    for (TextMatches matches : table.getTexts().find(message.getText())) {
+      HandlerMethod method = matches.getMethod();
+      if (!method.acceptsState(state) || !method.acceptsLocality(localityBit)) {
+        continue;
+      }
+      if (method.isObserver()) {
+        invokeObserver(table, method, message, matches, null);
+        continue;
+      }
+      if (handler == null || precedes(method, handler.getMethod())) {
+        handler = matches;
+        found = 1;
+      } else if (!precedes(handler.getMethod(), method)) {
+        found++;
+      }
+    }
+    // Several triggers often match the same text, so it is not reported as a conflict
+    if (found > 1) {
+      LOG.debug("Text of message {} matches {} methods", message.getMessageId(), found);
+    }
+    return handler;
   }
 
-  @Override
-  public BotApiMethod onCallbackQuery(Update update) {
+  private Object resolveEditedMessage(DispatchTable table, Update update) {
+    return invokeMethod(table, SubUpdateType.EDITED_MESSAGE, update.getMessage());
+  }
+
+  private Object resolveCallbackQuery(DispatchTable table, Update update) {
+    long started = startTimer();
     CallbackQuery query = update.getCallbackQuery();
     CallbackOrigin origin = findOrigin(query);
-    return invokeMethod(CallbackMethod.class, e -> {
-      Locality updateLocality = null;
-      if (origin.equals(CallbackOrigin.MESSAGE)) {
-        updateLocality = findMessageLocality(query.getMessage());
+    Locality updateLocality =
+        origin == CallbackOrigin.MESSAGE ? findMessageLocality(query.getMessage()) : null;
+    List<CallbackMatch> matches = query.getData() != null
+        ? table.getCallbacks().find(query.getData())
+        : table.getGames().find(query.getGameShortName());
+
+    int localityBit = Locality.bit(updateLocality);
+    int originBit = origin.bit();
+    // Inline messages don't have a chat, their conversations are kept like private ones
+    String state = findState(table,
+        query.getMessage() != null ? query.getMessage().getChatId() : null, query.getFrom());
+    CallbackMatch handler = null;
+    int found = 0;
+    for (CallbackMatch match : matches) {
+      HandlerMethod method = match.getMethod();
+      if (method.acceptsState(state) && method.acceptsLocality(localityBit)
+          && method.acceptsOrigin(originBit)) {
+        if (method.isObserver()) {
+          invokeObserver(table, method, query, origin, match.getParams());
+          continue;
+        }
+        if (handler == null || precedes(method, handler.getMethod())) {
+          handler = match;
+          found = 1;
+        } else if (!precedes(handler.getMethod(), method)) {
+          found++;
+        }
       }
-      return
-          (Arrays.asList(e.data()).contains(query.getData()) || Arrays.asList(e.game_short_name())
-              .contains(query.getGameShortName())) && Locality.accept(updateLocality, e)
-              && CallbackOrigin.accept(origin, e);
-    }, bot, update.getCallbackQuery(), origin);
+    }
+
+    return invokeHandler(SubUpdateType.CALLBACK_QUERY, handler == null ? null : handler.getMethod(),
+        found, query, origin, handler == null ? null : handler.getParams(), started);
+  }
+
+  /**
+   * Returns the conversation state of a user, null if there is no conversation or the space
+   * doesn't have methods with a state.
+   *
+   * @param chatId chat of the update, null to use the private chat of the user
+   */
+  private String findState(DispatchTable table, Long chatId, User user) {
+    if (conversations == null || user == null || !table.hasStates()) {
+      return null;
+    }
+    long userId = user.getId();
+    return conversations.getState(chatId != null ? chatId : userId, userId);
+  }
+
+  /**
+   * Tests that a method takes precedence over a selected one: methods for the current
+   * conversation state are preferred to methods for any state.
+   */
+  private static boolean precedes(HandlerMethod method, HandlerMethod selected) {
+    return method.getState() != null && selected.getState() == null;
   }
 
   private Locality findMessageLocality(Message message) {
@@ -134,77 +465,357 @@ public class RequestResolver implements Handler {
     return locality;
   }
 
-  @Override
-  public BotApiMethod onInlineQuery(Update update) {
-    return invokeMethod(InlineMethod.class, bot, update.getInlineQuery());
+  /**
+   * Invokes InlineMethod. If the method supersedes queries, it receives a token which is
+   * cancelled by a newer query of the user, and an answer to a cancelled query is dropped.
+   *
+   * @param registered token registered on arrival of the query, null to register it now
+   */
+  private Object resolveInlineQuery(DispatchTable table, Update update,
+      CancellationToken registered) {
+    long started = startTimer();
+    InlineQuery query = update.getInlineQuery();
+    HandlerMethod[] methods = table.getMethods(SubUpdateType.INLINE_QUERY);
+    InlineQueryTracker tracker = findInlineQueryTracker(methods);
+    if (tracker == null) {
+      return invokeMethod(table, SubUpdateType.INLINE_QUERY, methods, e -> true, query, null,
+          started);
+    }
+
+    CancellationToken token = registered != null ? registered : tracker.register(query);
+    if (token.isCancelled()) {
+      LOG.debug("Inline query {} is superseded, skipping", query.getId());
+      return null;
+    }
+    Object result;
+    token.attach();
+    try {
+      result = invokeMethod(table, SubUpdateType.INLINE_QUERY, methods, e -> true, query, token,
+          started);
+    } finally {
+      token.detach();
+    }
+
+    if (result instanceof CompletionStage) {
+      CompletableFuture<Object> answer = new CompletableFuture<>();
+      ((CompletionStage<?>) result).whenComplete((value, e) -> {
+        tracker.complete(query, token);
+        if (token.isCancelled()) {
+          answer.complete(null);
+        } else if (e != null) {
+          answer.completeExceptionally(e);
+        } else {
+          answer.complete(value);
+        }
+      });
+      return answer;
+    }
+    tracker.complete(query, token);
+    return token.isCancelled() ? null : result;
   }
 
-  @Override
-  public BotApiMethod onChosenInlineQuery(Update update) {
-    return invokeMethod(ChosenInlineMethod.class, bot, update.getChosenInlineQuery());
+  /**
+   * Registers an inline query before it is queued, so it is skipped if a newer query of the user
+   * arrives while it waits for the executor.
+   *
+   * @return null if the query is not superseded
+   */
+  private CancellationToken registerInlineQuery(DispatchTable table, InlineQuery query) {
+    HandlerMethod[] methods = table.getMethods(SubUpdateType.INLINE_QUERY);
+    InlineQueryTracker tracker = findInlineQueryTracker(methods);
+    return tracker == null ? null : tracker.register(query);
   }
 
-  @Override
-  public BotApiMethod onChannelPost(Update update) {
-    return invokeMethod(ChannelPostMethod.class, bot, update.getChannelPost());
+  /**
+   * Returns the tracker of the InlineMethod which answers queries, null if it doesn't supersede
+   * them.
+   */
+  private static InlineQueryTracker findInlineQueryTracker(HandlerMethod[] methods) {
+    for (HandlerMethod method : methods) {
+      if (!method.isObserver()) {
+        return method.getInlineQueryTracker();
+      }
+    }
+    return null;
   }
 
-  @Override
-  public BotApiMethod onEditedChannelPost(Update update) {
-    return invokeMethod(EditedChannelPostMethod.class, bot, update.getEditedChannelPost());
+  private Object resolveChosenInlineQuery(DispatchTable table, Update update) {
+    return invokeMethod(table, SubUpdateType.CHOSEN_INLINE_QUERY, update.getChosenInlineQuery());
   }
 
-  @Override
-  public BotApiMethod onShippingQuery(Update update) {
-    return invokeMethod(ShippingMethod.class, bot, update.getShippingQuery());
+  private Object resolveChannelPost(DispatchTable table, Update update) {
+    return invokeMethod(table, SubUpdateType.CHANNEL_POST, update.getChannelPost());
   }
 
-  @Override
-  public BotApiMethod onPreCheckoutQuery(Update update) {
-    return invokeMethod(PreCheckoutMethod.class, bot, update.getPreCheckoutQuery());
+  private Object resolveEditedChannelPost(DispatchTable table, Update update) {
+    return invokeMethod(table, SubUpdateType.EDITED_CHANNEL_POST, update.getEditedChannelPost());
+  }
+
+  private Object resolveShippingQuery(DispatchTable table, Update update) {
+    return invokeMethod(table, SubUpdateType.SHIPPING_QUERY, update.getShippingQuery());
+  }
+
+  private Object resolvePreCheckoutQuery(DispatchTable table, Update update) {
+    return invokeMethod(table, SubUpdateType.PRE_CHECKOUT_QUERY, update.getPreCheckoutQuery());
+  }
+
+  private Object invokeMethod(DispatchTable table, SubUpdateType type,
+      Predicate<HandlerMethod> predicate, Object arg, Object extra, long started) {
+    return invokeMethod(table, type, table.getMethods(type), predicate, arg, extra, started);
+  }
+
+  private Object invokeMethod(DispatchTable table, SubUpdateType type, HandlerMethod[] candidates,
+      Predicate<HandlerMethod> predicate, Object arg, Object extra, long started) {
+    HandlerMethod handler = null;
+    int found = 0;
+    for (HandlerMethod candidate : candidates) {
+      if (predicate.test(candidate)) {
+        if (candidate.isObserver()) {
+          invokeObserver(table, candidate, arg, extra, null);
+          continue;
+        }
+        if (handler == null || precedes(candidate, handler)) {
+          handler = candidate;
+          found = 1;
+        } else if (!precedes(handler, candidate)) {
+          found++;
+        }
+      }
+    }
+
+    MediaGroupBuffer mediaGroups = handler == null ? null : handler.getMediaGroupBuffer();
+    if (mediaGroups != null) {
+      return invokeMediaGroup(table, type, handler, found, (Message) arg, mediaGroups, started);
+    }
+    return invokeHandler(type, handler, found, arg, extra, null, started);
+  }
+
+  /**
+   * Buffers a message of a media group, the handler is invoked once for the whole group on the
+   * executor and its result is sent by the sender. A message without a group, or which doesn't
+   * fit into the buffer, is handled as a group of one message.
+   *
+   * @return null if the message is buffered
+   */
+  private Object invokeMediaGroup(DispatchTable table, SubUpdateType type, HandlerMethod handler,
+      int found, Message message, MediaGroupBuffer mediaGroups, long started) {
+    if (message.getMediaGroupId() == null) {
+      return invokeHandler(type, handler, found, message, Collections.singletonList(message), null,
+          started);
+    }
+
+    // Every buffered message holds its table until the group is handled
+    table.acquire();
+    boolean buffered = mediaGroups.add(message, table, (messages, tables) -> {
+      Runnable task = () -> {
+        try {
+          toStage(invokeHandler(type, handler, found, messages.get(0), messages, null,
+              startTimer())).thenAccept(this::send);
+        } finally {
+          releaseAll(tables);
+        }
+      };
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        releaseAll(tables);
+        LOG.error("Media group {} is rejected: {}", messages.get(0).getMediaGroupId(),
+            e.getMessage());
+      }
+    });
+    if (buffered) {
+      LOG.debug("Message {} is buffered in media group {}", message.getMessageId(),
+          message.getMediaGroupId());
+      return null;
+    }
+
+    table.release();
+    LOG.warn("Too many media groups are buffered, message {} is handled alone",
+        message.getMessageId());
+    return invokeHandler(type, handler, found, message, Collections.singletonList(message), null,
+        started);
+  }
+
+  private static void releaseAll(List<DispatchTable> tables) {
+    for (DispatchTable table : tables) {
+      table.release();
+    }
+  }
+
+  /**
+   * Sends a result of a handler which is not returned as a webhook response.
+   */
+  @SuppressWarnings("unchecked")
+  private void send(BotApiMethod method) {
+    if (method == null) {
+      return;
+    }
+    try {
+      sender.execute(method);
+    } catch (TelegramApiException e) {
+      LOG.error("Cannot send {}: {}", method.getMethod(), e.getMessage());
+    }
   }
 
-  private <A extends Annotation> BotApiMethod invokeMethod(Class<A> type, Predicate<A> predicate,
-      Object... params) {
-    Map<Method, HandlerInfo> handlers = Handlers.findHandlersForRequest(space, type, predicate);
-    if (handlers.isEmpty()) {
-      LOG.warn("Cannot find a handler for request {}", type);
+  /**
+   * Invokes the selected handler with the bot and the given arguments.
+   *
+   * <p>A method may declare only leading parameters, so trailing optional values, such as
+   * callback parameters, are passed only if the method accepts them.</p>
+   *
+   * @param handler selected method, null if nothing was found
+   * @param found count of suitable methods
+   * @param started result of {@link #startTimer()} at the start of routing
+   */
+  private Object invokeHandler(SubUpdateType type, HandlerMethod handler, int found,
+      Object arg, Object extra, Object optional, long started) {
+    boolean measured = metrics != DispatchMetrics.NOOP;
+    long routed = 0;
+    if (measured) {
+      routed = System.nanoTime();
+      metrics.recordDispatch(space, type, DispatchResult.of(found), routed - started);
+    }
+
+    if (handler == null) {
+      LOG.warn("Cannot find a handler for request {}", type.getAnnotation());
       return null;
     }
-    if (handlers.size() > 1) {
-      LOG.warn("Found {} handlers for request. Invoking the first...", handlers.size());
+    if (found > 1) {
+      LOG.warn("Found {} handlers for request. Invoking the first...", found);
     }
 
-    Entry<Method, HandlerInfo> handler = handlers.entrySet().iterator().next();
-    Method method = handler.getKey();
     try {
-      return (BotApiMethod) method.invoke(handler.getValue().getHandler(), params);
+      InlineCache cache = handler.getInlineCache();
+      Object result = cache == null ? handler.invoke(sender, arg, extra, optional)
+          : cache.get((InlineQuery) arg, (CancellationToken) extra, executor,
+              () -> handler.invoke(sender, arg, extra, optional));
+      if (measured) {
+        recordInvocation(handler, routed, result);
+      }
+      return result;
+    } catch (InterruptedException e) {
+      // An interrupt made by a cancellation token is cleared when the token is detached
+      Thread.currentThread().interrupt();
+      LOG.debug("Method \"{}\" is interrupted", handler.getMethod().getName());
+    } catch (CancellationException e) {
+      LOG.debug("Method \"{}\" is cancelled", handler.getMethod().getName());
     } catch (Exception e) {
-      LOG.error("Cannot invoke method \"{}\": {}", method.toGenericString(), e.getMessage());
+      if (measured) {
+        metrics.recordException(space, handler, e);
+      }
+      LOG.error("Cannot invoke method \"{}\": {}", handler.getMethod().toGenericString(),
+          e.getMessage());
     }
 
     return null;
   }
 
-  private <A extends Annotation> BotApiMethod invokeMethod(Class<A> type, Object... params) {
-    return invokeMethod(type, e -> true, params);
+  /**
+   * Invokes observers of a type without selecting an answering method, for example when a method
+   * of another type answers the update.
+   */
+  private void invokeObservers(DispatchTable table, SubUpdateType type,
+      Predicate<HandlerMethod> predicate, Object arg) {
+    for (HandlerMethod candidate : table.getMethods(type)) {
+      if (candidate.isObserver() && predicate.test(candidate)) {
+        invokeObserver(table, candidate, arg, null, null);
+      }
+    }
   }
 
-  private String removeCommandPostfix(String command) {
-    String postfix = "@" + bot.getBotUsername();
-    if (command.contains(postfix)) {
-      return command.replaceFirst(postfix, "");
+  /**
+   * Invokes an observer on the executor, so it doesn't delay the answer. The observer holds the
+   * table until it returns.
+   */
+  private void invokeObserver(DispatchTable table, HandlerMethod observer, Object arg,
+      Object extra, Object optional) {
+    // Doesn't fail, the table is held by the caller
+    table.acquire();
+    Runnable task = () -> {
+      long started = startTimer();
+      try {
+        Object result = observer.invoke(sender, arg, extra, optional);
+        if (metrics != DispatchMetrics.NOOP) {
+          recordInvocation(observer, started, result);
+        }
+      } catch (Exception e) {
+        if (metrics != DispatchMetrics.NOOP) {
+          metrics.recordException(space, observer, e);
+        }
+        LOG.error("Cannot invoke observer \"{}\": {}", observer.getMethod().toGenericString(),
+            e.getMessage());
+      } finally {
+        table.release();
+      }
+    };
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      table.release();
+      LOG.error("Observer \"{}\" is rejected: {}", observer.getMethod().toGenericString(),
+          e.getMessage());
     }
-    return command;
   }
 
-  private List<String> parseArgs(String text) {
-    List<String> result = new ArrayList<>();
-    Matcher m = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(text);
-    while (m.find()) {
-      result.add(m.group(1).replaceAll("\"", ""));
+  private Object invokeMethod(DispatchTable table, SubUpdateType type, Object arg) {
+    return invokeMethod(table, type, e -> true, arg, null, startTimer());
+  }
+
+  /**
+   * Returns the current time for metrics, doesn't read the clock if metrics are disabled.
+   */
+  private long startTimer() {
+    return metrics == DispatchMetrics.NOOP ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Records latency of a handler. An asynchronous result is measured until it completes.
+   */
+  private void recordInvocation(HandlerMethod handler, long started, Object result) {
+    if (result instanceof CompletionStage) {
+      ((CompletionStage<?>) result).whenComplete((value, e) -> {
+        metrics.recordInvocation(space, handler, System.nanoTime() - started);
+        if (e != null) {
+          metrics.recordException(space, handler,
+              e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+        }
+      });
+    } else {
+      metrics.recordInvocation(space, handler, System.nanoTime() - started);
     }
-    return result;
+  }
+
+  /**
+   * Finds the end of a command with an optional bot mention, for example "/start@botname".
+   *
+   * @return index of the first whitespace or the text length
+   */
+  private int findCommandEnd(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (Character.isWhitespace(text.charAt(i))) {
+        return i;
+      }
+    }
+    return text.length();
+  }
+
+  /**
+   * Excludes the "@botname" postfix from a command if the command was sent to this bot.
+   *
+   * @param end end of the command returned by {@link #findCommandEnd(String)}
+   * @return end of the command without the postfix
+   */
+  private int removeCommandPostfix(String text, int end) {
+    int at = text.lastIndexOf('@', end - 1);
+    if (at < 0) {
+      return end;
+    }
+    String username = bot.getBotUsername();
+    if (username != null && end - at - 1 == username.length()
+        && text.regionMatches(true, at + 1, username, 0, username.length())) {
+      return at;
+    }
+    return end;
   }
 
   private JoinReason findJoinReason(Message message) {
@@ -218,4 +829,81 @@ public class RequestResolver implements Handler {
     int from = message.getFrom().getId();
     return leftMember.getId() == from ? LeaveReason.SELF : LeaveReason.KICK;
   }
+
+  /**
+   * Options of a resolver.
+   *
+   * @see #builder(String, TelegramWebhookBot)
+   */
+  public static final class Builder {
+
+    private final String space;
+    private final TelegramWebhookBot bot;
+    private AbsSender sender;
+    private Executor executor = AsyncExecutors.defaultExecutor();
+    private DispatchMetrics metrics = DispatchMetrics.NOOP;
+    private UpdateDeduplicator deduplicator;
+    private ConversationStore conversations;
+
+    private Builder(String space, TelegramWebhookBot bot) {
+      this.space = space;
+      this.bot = bot;
+      this.sender = bot;
+    }
+
+    /**
+     * Sets a sender which is passed to handlers instead of the bot. Handlers must declare the
+     * sender parameter as {@link AbsSender}.
+     *
+     * @param sender sends requests of handlers, for example {@link FloodControlSender}
+     */
+    public Builder setSender(AbsSender sender) {
+      this.sender = sender;
+      return this;
+    }
+
+    /**
+     * Sets the executor for {@link #handleRequestAsync(Update)}.
+     *
+     * @param executor runs handlers of asynchronous requests, observers and media groups
+     */
+    public Builder setExecutor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Sets metrics of routing and handlers.
+     *
+     * @param metrics {@link DispatchMetrics#NOOP} to disable them
+     */
+    public Builder setMetrics(DispatchMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Sets deduplication of updates.
+     *
+     * @param deduplicator suppresses repeated updates, null to handle every update
+     */
+    public Builder setDeduplicator(UpdateDeduplicator deduplicator) {
+      this.deduplicator = deduplicator;
+      return this;
+    }
+
+    /**
+     * Sets conversation states which select handler methods with a state.
+     *
+     * @param conversations states of users, null to select only methods without a state
+     */
+    public Builder setConversations(ConversationStore conversations) {
+      this.conversations = conversations;
+      return this;
+    }
+
+    public RequestResolver build() {
+      return new RequestResolver(this);
+    }
+  }
 }
@@ -0,0 +1,78 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A new version of a space which is built off to the side. Handlers are resolved when they are
+ * added, so publishing only swaps the dispatch table of the space.
+ *
+ * <pre>{@code
+ * DispatchTable previous = Handlers.stage(space).addHandlers(handlers).publish();
+ * }</pre>
+ *
+ * @see Handlers#stage(String)
+ */
+public final class StagedSpace {
+
+  private final String space;
+  private final List<HandlerInfo> handlers = new ArrayList<>();
+  private final List<UpdateInterceptor> interceptors = new ArrayList<>();
+  private boolean published;
+
+  StagedSpace(String space) {
+    this.space = space;
+  }
+
+  public String getSpace() {
+    return space;
+  }
+
+  /**
+   * Add a new handler to the staged space.
+   */
+  public StagedSpace addHandler(Object object) {
+    checkNotPublished();
+    handlers.add(new HandlerInfo(object));
+    return this;
+  }
+
+  /**
+   * Add new handlers to the staged space.
+   */
+  public StagedSpace addHandlers(Collection<?> objects) {
+    for (Object object : objects) {
+      addHandler(object);
+    }
+    return this;
+  }
+
+  /**
+   * Add an interceptor to the staged space. Interceptors are invoked in the order of adding.
+   */
+  public StagedSpace addInterceptor(UpdateInterceptor interceptor) {
+    checkNotPublished();
+    interceptors.add(interceptor);
+    return this;
+  }
+
+  /**
+   * Replace the space with the staged handlers and interceptors. Updates which are already
+   * dispatched finish on the previous table, it is released when the last of them is handled.
+   *
+   * @return the replaced table, null if the space was absent
+   * @see DispatchTable#getReleased()
+   */
+  public DispatchTable publish() {
+    checkNotPublished();
+    published = true;
+    return Handlers.publish(space, handlers, interceptors);
+  }
+
+  private void checkNotPublished() {
+    if (published) {
+      throw new IllegalStateException("Space " + space + " is already published");
+    }
+  }
+}
@@ -0,0 +1,442 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable Aho-Corasick automaton of TextMethod triggers of a space.
+ *
+ * <p>Keywords and phrases of all methods are compiled into one automaton with case folded chars,
+ * so a text is scanned once regardless of the count of triggers. A keyword matches only whole
+ * words, a phrase matches anywhere.</p>
+ *
+ * <p>Regular expressions can't be merged into the automaton. Instead, a literal which every match
+ * of an expression must contain is added to the automaton, and the expression is evaluated only if
+ * the scan finds its literal. Expressions without such a literal, for example with alternatives
+ * at the top level, are evaluated for every text.</p>
+ *
+ * @see com.github.snqlby.tgwebhook.methods.TextMethod
+ */
+public final class TextIndex {
+
+  private static final int KEYWORD = 0;
+  private static final int PHRASE = 1;
+  private static final int LITERAL = 2;
+
+  private static final int ROOT = 0;
+  private static final int MIN_LITERAL = 2;
+
+  /**
+   * Escapes which are followed by chars which are not literals, such as hex codes or properties.
+   */
+  private static final Pattern COMPLEX_ESCAPES = Pattern.compile("\\\\[QxupPkcN0]");
+
+  private static final Comparator<TextMatch> BY_POSITION =
+      Comparator.comparingInt(TextMatch::getStart).thenComparingInt(TextMatch::getEnd);
+
+  private final HandlerMethod[] methods;
+
+  /**
+   * Kind, length and owner of every string in the automaton. The owner of a keyword or a phrase
+   * is a method, the owner of a literal is a regular expression.
+   */
+  private final int[] kinds;
+  private final int[] lengths;
+  private final int[] owners;
+  private final String[] triggers;
+
+  private final Pattern[] patterns;
+  private final int[] patternMethods;
+  private final boolean[] filtered;
+
+  /**
+   * True if a regular expression has no literal, so it is evaluated for every text.
+   */
+  private final boolean unfiltered;
+
+  /**
+   * Nodes of the automaton: sorted chars of transitions, target nodes, the longest proper suffix
+   * node, the nearest suffix node with outputs and strings which end at the node.
+   */
+  private final char[][] keys;
+  private final int[][] targets;
+  private final int[] failures;
+  private final int[] outputLinks;
+  private final int[][] outputs;
+
+  TextIndex(HandlerMethod[] methods) {
+    this.methods = methods;
+    List<int[]> strings = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    List<Pattern> patternList = new ArrayList<>();
+    List<Integer> patternMethodList = new ArrayList<>();
+    List<Boolean> filteredList = new ArrayList<>();
+    for (int i = 0; i < methods.length; i++) {
+      for (String keyword : methods[i].getKeywords()) {
+        addString(strings, values, KEYWORD, keyword, i);
+      }
+      for (String phrase : methods[i].getPhrases()) {
+        addString(strings, values, PHRASE, phrase, i);
+      }
+      for (Pattern pattern : methods[i].getPatterns()) {
+        String literal = findLiteral(pattern.pattern());
+        if (literal != null) {
+          addString(strings, values, LITERAL, literal, patternList.size());
+        }
+        patternList.add(pattern);
+        patternMethodList.add(i);
+        filteredList.add(literal != null);
+      }
+    }
+
+    int count = strings.size();
+    this.kinds = new int[count];
+    this.lengths = new int[count];
+    this.owners = new int[count];
+    this.triggers = values.toArray(new String[0]);
+    for (int i = 0; i < count; i++) {
+      kinds[i] = strings.get(i)[0];
+      lengths[i] = triggers[i].length();
+      owners[i] = strings.get(i)[1];
+    }
+    this.patterns = patternList.toArray(new Pattern[0]);
+    this.patternMethods = new int[patterns.length];
+    this.filtered = new boolean[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      patternMethods[i] = patternMethodList.get(i);
+      filtered[i] = filteredList.get(i);
+    }
+    this.unfiltered = filteredList.contains(false);
+
+    List<Node> nodes = build(triggers);
+    int size = nodes.size();
+    this.keys = new char[size][];
+    this.targets = new int[size][];
+    this.failures = new int[size];
+    this.outputLinks = new int[size];
+    this.outputs = new int[size][];
+    for (Node node : nodes) {
+      int id = node.id;
+      keys[id] = new char[node.children.size()];
+      targets[id] = new int[node.children.size()];
+      int index = 0;
+      for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+        keys[id][index] = child.getKey();
+        targets[id][index] = child.getValue().id;
+        index++;
+      }
+      failures[id] = node.failure == null ? ROOT : node.failure.id;
+      outputLinks[id] = node.outputLink == null ? ROOT : node.outputLink.id;
+      outputs[id] = node.outputs.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  private static void addString(List<int[]> strings, List<String> values, int kind,
+      String value, int owner) {
+    // An empty trigger would match every text
+    if (!value.isEmpty()) {
+      strings.add(new int[] {kind, owner});
+      values.add(value);
+    }
+  }
+
+  /**
+   * Builds a trie of the strings and links every node to its longest proper suffix in the trie.
+   *
+   * @return nodes in breadth-first order, the root is the first one
+   */
+  private static List<Node> build(String[] strings) {
+    Node root = new Node();
+    for (int i = 0; i < strings.length; i++) {
+      Node node = root;
+      String value = strings[i];
+      for (int j = 0; j < value.length(); j++) {
+        node = node.children.computeIfAbsent(fold(value.charAt(j)), key -> new Node());
+      }
+      node.outputs.add(i);
+    }
+
+    List<Node> nodes = new ArrayList<>();
+    Queue<Node> queue = new ArrayDeque<>();
+    queue.add(root);
+    while (!queue.isEmpty()) {
+      Node node = queue.remove();
+      node.id = nodes.size();
+      nodes.add(node);
+      for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+        Node child = entry.getValue();
+        Node failure = node.failure;
+        while (failure != null && !failure.children.containsKey(entry.getKey())) {
+          failure = failure.failure;
+        }
+        child.failure = failure == null ? root : failure.children.get(entry.getKey());
+        child.outputLink = child.failure.outputs.isEmpty() ? child.failure.outputLink
+            : child.failure;
+        queue.add(child);
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Finds a literal which every match of a regular expression contains. The search is
+   * conservative: groups, classes and quantified chars are skipped, and expressions with flags,
+   * quotations or alternatives at the top level have no literal.
+   *
+   * @return null if there is no literal long enough to filter texts
+   */
+  static String findLiteral(String regex) {
+    if (regex.contains("(?") || COMPLEX_ESCAPES.matcher(regex).find()) {
+      return null;
+    }
+
+    String best = "";
+    StringBuilder run = new StringBuilder();
+    int depth = 0;
+    int i = 0;
+    while (i < regex.length()) {
+      char c = regex.charAt(i++);
+      if (c == '\\' && i < regex.length()) {
+        char escaped = regex.charAt(i++);
+        if (depth == 0 && !Character.isLetterOrDigit(escaped)) {
+          run.append(escaped);
+          continue;
+        }
+        // Skips digits of a back reference
+        while (Character.isDigit(escaped) && i < regex.length()
+            && Character.isDigit(regex.charAt(i))) {
+          i++;
+        }
+      } else if (c == '[') {
+        i = skipClass(regex, i);
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == '|') {
+        if (depth == 0) {
+          return null;
+        }
+      } else if (c == '?' || c == '*' || c == '{') {
+        // The quantified char is optional
+        int last = run.length() - 1;
+        if (last > 0 && Character.isLowSurrogate(run.charAt(last))
+            && Character.isHighSurrogate(run.charAt(last - 1))) {
+          // A supplementary char is quantified as a whole
+          last--;
+        }
+        if (last >= 0) {
+          run.setLength(last);
+        }
+        if (c == '{') {
+          int close = regex.indexOf('}', i);
+          i = close < 0 ? regex.length() : close + 1;
+        }
+      } else if (c == '+') {
+        // The quantified char is required once
+        best = longest(best, run);
+        run.setLength(0);
+        continue;
+      } else if (depth == 0 && c != '.' && c != '^' && c != '$') {
+        run.append(c);
+        continue;
+      }
+      best = longest(best, run);
+      run.setLength(0);
+    }
+    best = longest(best, run);
+    return best.length() >= MIN_LITERAL ? best : null;
+  }
+
+  private static String longest(String best, StringBuilder run) {
+    return run.length() > best.length() ? run.toString() : best;
+  }
+
+  /**
+   * Returns the index after a character class, classes may be nested.
+   *
+   * @param start index after the opening bracket
+   */
+  private static int skipClass(String regex, int start) {
+    int depth = 1;
+    int i = start;
+    if (i < regex.length() && regex.charAt(i) == '^') {
+      i++;
+    }
+    if (i < regex.length() && regex.charAt(i) == ']') {
+      // A bracket right after the opening one is a literal
+      i++;
+    }
+    while (i < regex.length() && depth > 0) {
+      char c = regex.charAt(i++);
+      if (c == '\\') {
+        i++;
+      } else if (c == '[') {
+        depth++;
+      } else if (c == ']') {
+        depth--;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * Folds the case of a char, so a text matches triggers regardless of case. Chars are folded one
+   * by one, so positions in the folded text are the same as in the original one.
+   */
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  /**
+   * Checks if a text may contain triggers with a scan of the automaton only, regular expressions
+   * are not evaluated and whole words are not checked. It may accept a text which
+   * {@link #find(String)} doesn't match, but never rejects a matched one.
+   *
+   * @param text text of a message, may be null
+   */
+  public boolean mayMatch(String text) {
+    if (text == null || methods.length == 0) {
+      return false;
+    }
+    if (unfiltered) {
+      return true;
+    }
+    int state = ROOT;
+    for (int i = 0; i < text.length(); i++) {
+      state = next(state, fold(text.charAt(i)));
+      if (outputs[state].length != 0 || outputLinks[state] != ROOT) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds all methods with triggers which occur in the text.
+   *
+   * @param text text of a message, may be null
+   * @return matched methods in the order of the dispatch table
+   */
+  public List<TextMatches> find(String text) {
+    if (text == null || methods.length == 0) {
+      return Collections.emptyList();
+    }
+
+    List<List<TextMatch>> found = new ArrayList<>(Collections.nCopies(methods.length, null));
+    boolean[] candidates = patterns.length == 0 ? null : new boolean[patterns.length];
+    int state = ROOT;
+    for (int i = 0; i < text.length(); i++) {
+      state = next(state, fold(text.charAt(i)));
+      int node = outputs[state].length != 0 ? state : outputLinks[state];
+      while (node != ROOT) {
+        for (int string : outputs[node]) {
+          collect(text, string, i + 1, found, candidates);
+        }
+        node = outputLinks[node];
+      }
+    }
+
+    for (int i = 0; i < patterns.length; i++) {
+      if (filtered[i] && !candidates[i]) {
+        continue;
+      }
+      Matcher matcher = patterns[i].matcher(text);
+      while (matcher.find()) {
+        if (matcher.end() > matcher.start()) {
+          add(found, patternMethods[i], new TextMatch(text, patterns[i].pattern(),
+              matcher.start(), matcher.end()));
+        }
+      }
+    }
+
+    List<TextMatches> result = new ArrayList<>(1);
+    for (int i = 0; i < found.size(); i++) {
+      List<TextMatch> matches = found.get(i);
+      if (matches != null) {
+        matches.sort(BY_POSITION);
+        result.add(new TextMatches(methods[i], text, Collections.unmodifiableList(matches)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Follows the transition by a char, using failure links if the node doesn't have it.
+   */
+  private int next(int state, char c) {
+    int node = state;
+    while (true) {
+      int index = Arrays.binarySearch(keys[node], c);
+      if (index >= 0) {
+        return targets[node][index];
+      }
+      if (node == ROOT) {
+        return ROOT;
+      }
+      node = failures[node];
+    }
+  }
+
+  private void collect(String text, int string, int end, List<List<TextMatch>> found,
+      boolean[] candidates) {
+    int start = end - lengths[string];
+    switch (kinds[string]) {
+      case KEYWORD:
+        if (isWordStart(text, start) && isWordEnd(text, end)) {
+          add(found, owners[string], new TextMatch(text, triggers[string], start, end));
+        }
+        break;
+      case PHRASE:
+        add(found, owners[string], new TextMatch(text, triggers[string], start, end));
+        break;
+      default:
+        candidates[owners[string]] = true;
+        break;
+    }
+  }
+
+  /**
+   * Checks that a keyword is not a part of a longer word. A keyword which starts or ends with a
+   * non-word char, such as "c++", is not checked on that side.
+   */
+  private static boolean isWordStart(String text, int start) {
+    return start == 0 || !isWordChar(text.charAt(start)) || !isWordChar(text.charAt(start - 1));
+  }
+
+  private static boolean isWordEnd(String text, int end) {
+    return end == text.length() || !isWordChar(text.charAt(end - 1))
+        || !isWordChar(text.charAt(end));
+  }
+
+  private static void add(List<List<TextMatch>> found, int method, TextMatch match) {
+    List<TextMatch> matches = found.get(method);
+    if (matches == null) {
+      matches = new ArrayList<>(1);
+      found.set(method, matches);
+    }
+    matches.add(match);
+  }
+
+  private static final class Node {
+
+    private final Map<Character, Node> children = new TreeMap<>();
+    private final List<Integer> outputs = new ArrayList<>(0);
+    private Node failure;
+    private Node outputLink;
+    private int id;
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.snqlby.tgwebhook;
+
+/**
+ * An occurrence of a TextMethod trigger in a message text.
+ *
+ * @see TextMatches
+ */
+public final class TextMatch {
+
+  private final String text;
+  private final String trigger;
+  private final int start;
+  private final int end;
+
+  TextMatch(String text, String trigger, int start, int end) {
+    this.text = text;
+    this.trigger = trigger;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the keyword, the phrase or the regular expression which matched.
+   */
+  public String getTrigger() {
+    return trigger;
+  }
+
+  /**
+   * Returns the index of the first char of the occurrence.
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * Returns the index after the last char of the occurrence.
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * Returns the matched part of the text as it is written in the message.
+   */
+  public String getValue() {
+    return text.substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return trigger + "@" + start + ".." + end;
+  }
+}
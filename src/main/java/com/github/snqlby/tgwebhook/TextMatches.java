@@ -0,0 +1,44 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.List;
+
+/**
+ * A TextMethod handler with occurrences of its triggers in a message text. It is passed to the
+ * handler method after the message.
+ *
+ * @see TextIndex
+ */
+public final class TextMatches {
+
+  private final HandlerMethod method;
+  private final String text;
+  private final List<TextMatch> matches;
+
+  TextMatches(HandlerMethod method, String text, List<TextMatch> matches) {
+    this.method = method;
+    this.text = text;
+    this.matches = matches;
+  }
+
+  public HandlerMethod getMethod() {
+    return method;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Returns occurrences of the triggers, ordered by their positions.
+   *
+   * @return unmodifiable list, it is never empty
+   */
+  public List<TextMatch> getMatches() {
+    return matches;
+  }
+
+  @Override
+  public String toString() {
+    return matches.toString();
+  }
+}
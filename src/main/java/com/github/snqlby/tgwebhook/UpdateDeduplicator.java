@@ -0,0 +1,170 @@
+package com.github.snqlby.tgwebhook;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Remembers recent update ids to suppress updates which Telegram delivers again, for example
+ * after a slow or failed webhook response.
+ *
+ * <p>Ids are kept in a fixed window: when it is full, the oldest id is forgotten. The window is
+ * split into stripes by id, every stripe is a ring of ids in arrival order plus an open-addressing
+ * set of the same ids, both are plain int arrays. Nothing is allocated after construction.</p>
+ *
+ * <p>Update ids are unique per bot, so a deduplicator must not be shared between spaces of
+ * different bots.</p>
+ */
+public class UpdateDeduplicator {
+
+  public static final int DEFAULT_WINDOW = 4096;
+
+  private static final int EMPTY = Integer.MIN_VALUE;
+  private static final int MAX_STRIPES = 16;
+
+  private final Stripe[] stripes;
+  private final int window;
+  private final LongAdder suppressed = new LongAdder();
+
+  public UpdateDeduplicator() {
+    this(DEFAULT_WINDOW);
+  }
+
+  /**
+   * Creates a deduplicator.
+   *
+   * @param window count of recent ids to remember, it is rounded up to a multiple of the stripe
+   *     count
+   */
+  public UpdateDeduplicator(int window) {
+    if (window < 1) {
+      throw new IllegalArgumentException("Window must be positive: " + window);
+    }
+    int count = Math.min(MAX_STRIPES, Integer.highestOneBit(window));
+    int stripeWindow = (window + count - 1) / count;
+    this.stripes = new Stripe[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new Stripe(stripeWindow);
+    }
+    this.window = stripeWindow * count;
+  }
+
+  /**
+   * Remembers an update id.
+   *
+   * @return false if the id is already in the window
+   */
+  public boolean accept(int updateId) {
+    if (updateId == EMPTY) {
+      return true;
+    }
+    // Ids are sequential, so the lowest bits spread them evenly
+    if (stripes[updateId & (stripes.length - 1)].add(updateId)) {
+      return true;
+    }
+    suppressed.increment();
+    return false;
+  }
+
+  /**
+   * Remembers the id of an update. Updates without an id are always accepted.
+   *
+   * @return false if the update was already accepted
+   */
+  public boolean accept(Update update) {
+    Integer updateId = update.getUpdateId();
+    return updateId == null || accept(updateId.intValue());
+  }
+
+  /**
+   * Returns the count of suppressed duplicates.
+   */
+  public long getSuppressedCount() {
+    return suppressed.sum();
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  private static final class Stripe {
+
+    private final int[] ring;
+    private final int[] table;
+    private final int shift;
+    private int head;
+    private int size;
+
+    private Stripe(int window) {
+      this.ring = new int[window];
+      // The load factor of the set is at most 0.5
+      int capacity = Integer.highestOneBit(window) << 2;
+      this.table = new int[capacity];
+      this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+      Arrays.fill(table, EMPTY);
+    }
+
+    private int slot(int id) {
+      return (id * 0x9E3779B9) >>> shift;
+    }
+
+    private synchronized boolean add(int id) {
+      int mask = table.length - 1;
+      int index = slot(id);
+      int value;
+      while ((value = table[index]) != EMPTY) {
+        if (value == id) {
+          return false;
+        }
+        index = (index + 1) & mask;
+      }
+
+      if (size == ring.length) {
+        remove(ring[head]);
+        // Removal may shift entries into the free slot
+        index = slot(id);
+        while (table[index] != EMPTY) {
+          index = (index + 1) & mask;
+        }
+      } else {
+        size++;
+      }
+      table[index] = id;
+      ring[head] = id;
+      head = head + 1 == ring.length ? 0 : head + 1;
+      return true;
+    }
+
+    /**
+     * Removes an id with backward shifting, so the set never contains tombstones.
+     */
+    private void remove(int id) {
+      int mask = table.length - 1;
+      int index = slot(id);
+      while (table[index] != id) {
+        if (table[index] == EMPTY) {
+          return;
+        }
+        index = (index + 1) & mask;
+      }
+
+      int next = index;
+      while (true) {
+        next = (next + 1) & mask;
+        int value = table[next];
+        if (value == EMPTY) {
+          break;
+        }
+        int home = slot(value);
+        // Move the entry if its home slot is not between the free slot and its position
+        boolean stays = index <= next ? index < home && home <= next
+            : index < home || home <= next;
+        if (!stays) {
+          table[index] = value;
+          index = next;
+        }
+      }
+      table[index] = EMPTY;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.github.snqlby.tgwebhook;
+
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+/**
+ * Runs common steps around handlers of a space, such as access checks, throttling or tracing.
+ *
+ * <p>Interceptors are invoked in the order of registration, {@code after} in the reverse order.
+ * An interceptor applies to types from its {@link AcceptTypes} annotation, or to all types if it
+ * is not annotated. Interceptors of other types are not invoked at all.</p>
+ *
+ * @see Handlers#addInterceptor(String, UpdateInterceptor)
+ */
+public interface UpdateInterceptor {
+
+  /**
+   * Invoked before handlers.
+   *
+   * @param bot sender which is passed to handlers
+   * @return false to skip handlers and remaining interceptors, the update is answered with null
+   */
+  default boolean before(AbsSender bot, Update update, UpdateType type) {
+    return true;
+  }
+
+  /**
+   * Invoked after handlers, or after a following interceptor has skipped them. It is invoked only
+   * if {@link #before(AbsSender, Update, UpdateType)} of this interceptor has returned true.
+   *
+   * @param result answer of a handler or of a following interceptor, may be null
+   * @return answer to the update
+   */
+  default BotApiMethod after(AbsSender bot, Update update, UpdateType type, BotApiMethod result) {
+    return result;
+  }
+}
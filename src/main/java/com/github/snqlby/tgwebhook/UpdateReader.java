@@ -0,0 +1,134 @@
+package com.github.snqlby.tgwebhook;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import java.io.IOException;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Reads webhook bodies and builds Update objects only for updates which can be handled in a
+ * space.
+ *
+ * <p>Routing fields are read first with {@link UpdateRoute}. The update is skipped if the
+ * handlers of the space certainly don't accept it and no interceptor applies to its type, the
+ * check never rejects an update which {@link RequestResolver} would handle.</p>
+ */
+public class UpdateReader {
+
+  private final String space;
+  private final ObjectMapper mapper;
+
+  public UpdateReader(String space) {
+    this(space, new ObjectMapper());
+  }
+
+  /**
+   * Creates a reader with a custom mapper.
+   *
+   * @param mapper used to build accepted updates
+   */
+  public UpdateReader(String space, ObjectMapper mapper) {
+    this.space = space;
+    this.mapper = mapper;
+  }
+
+  /**
+   * Reads an update if it can be handled.
+   *
+   * @param body JSON representation of an update
+   * @return null if there is no handler for the update
+   * @throws IOException if the body is not a valid update
+   */
+  public Update read(byte[] body, int offset, int length) throws IOException {
+    UpdateRoute route = UpdateRoute.parse(body, offset, length);
+    if (!accepts(Handlers.getDispatchTable(space), route)) {
+      return null;
+    }
+    return mapper.readValue(body, offset, length, Update.class);
+  }
+
+  public Update read(byte[] body) throws IOException {
+    return read(body, 0, body.length);
+  }
+
+  /**
+   * Checks if a dispatch table may contain a handler or an interceptor for the update.
+   */
+  static boolean accepts(DispatchTable table, UpdateRoute route) {
+    UpdateType type = route.getType();
+    if (type == null) {
+      return false;
+    }
+    // An interceptor may answer or record an update without a handler
+    if (table.getInterceptors().intercepts(type)) {
+      return true;
+    }
+
+    switch (type) {
+      case MESSAGE:
+        return acceptsMessage(table, route);
+      case CALLBACK_QUERY:
+        if (route.getCallbackData() != null) {
+          return !table.getCallbacks().find(route.getCallbackData()).isEmpty();
+        }
+        return !table.getGames().find(route.getGameShortName()).isEmpty();
+      default:
+        for (SubUpdateType subType : type.getSubTypes()) {
+          if (table.hasMethods(subType)) {
+            return true;
+          }
+        }
+        return false;
+    }
+  }
+
+  private static boolean acceptsMessage(DispatchTable table, UpdateRoute route) {
+    String text = route.getText();
+    if (text != null && text.startsWith("/") && table.hasMethods(SubUpdateType.COMMAND)) {
+      if (acceptsCommand(table, route, text)) {
+        return true;
+      }
+    } else if (route.hasNewChatMembers() && table.hasMethods(SubUpdateType.JOIN)) {
+      return acceptsRoom(table.getMethods(SubUpdateType.JOIN), route.getChatId());
+    } else if (route.hasLeftChatMember() && table.hasMethods(SubUpdateType.LEAVE)) {
+      return acceptsRoom(table.getMethods(SubUpdateType.LEAVE), route.getChatId());
+    }
+    // A text which starts with "/" is not a command without a bot_command entity
+    if (table.hasMethods(SubUpdateType.MESSAGE)) {
+      return true;
+    }
+    // The resolver finds matches itself, so only the automaton is scanned here
+    return text != null && table.hasMethods(SubUpdateType.TEXT)
+        && table.getTexts().mayMatch(text);
+  }
+
+  private static boolean acceptsCommand(DispatchTable table, UpdateRoute route, String text) {
+    int end = 0;
+    while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+      end++;
+    }
+    // The bot name is unknown here, so a command is checked both with and without a postfix
+    HandlerMethod[] candidates = table.getCommands().find(text, 0, end);
+    int at = text.lastIndexOf('@', end - 1);
+    if (candidates.length == 0 && at > 0) {
+      candidates = table.getCommands().find(text, 0, at);
+    }
+
+    int localityBit = Locality.bit(route.getLocality());
+    for (HandlerMethod candidate : candidates) {
+      if (candidate.acceptsLocality(localityBit)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean acceptsRoom(HandlerMethod[] methods, Long chatId) {
+    for (HandlerMethod method : methods) {
+      if (chatId == null || method.acceptsRoom(chatId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
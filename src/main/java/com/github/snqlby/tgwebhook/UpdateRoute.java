@@ -0,0 +1,257 @@
+package com.github.snqlby.tgwebhook;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+/**
+ * Routing fields of an update, read from a raw webhook body without building an Update object.
+ *
+ * @see UpdateReader
+ */
+public final class UpdateRoute {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private Integer updateId;
+  private UpdateType type;
+  private Long chatId;
+  private String chatType;
+  private Integer userId;
+  private String text;
+  private String callbackData;
+  private String gameShortName;
+  private boolean newChatMembers;
+  private boolean leftChatMember;
+
+  private UpdateRoute() {
+  }
+
+  /**
+   * Reads routing fields of an update. Other fields are skipped without being parsed.
+   *
+   * @param body JSON representation of an update
+   * @throws IOException if the body is not a valid JSON object
+   */
+  public static UpdateRoute parse(byte[] body, int offset, int length) throws IOException {
+    UpdateRoute route = new UpdateRoute();
+    try (JsonParser parser = FACTORY.createParser(body, offset, length)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Update must be a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        UpdateType type = findType(field);
+        if ("update_id".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+          route.updateId = parser.getIntValue();
+        } else if (type != null && token == JsonToken.START_OBJECT && route.type == null) {
+          route.type = type;
+          route.parsePayload(parser, type);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return route;
+  }
+
+  public static UpdateRoute parse(byte[] body) throws IOException {
+    return parse(body, 0, body.length);
+  }
+
+  private static UpdateType findType(String field) {
+    switch (field) {
+      case "message":
+        return UpdateType.MESSAGE;
+      case "edited_message":
+        return UpdateType.EDITED_MESSAGE;
+      case "channel_post":
+        return UpdateType.CHANNEL_POST;
+      case "edited_channel_post":
+        return UpdateType.EDITED_CHANNEL_POST;
+      case "inline_query":
+        return UpdateType.INLINE_QUERY;
+      case "chosen_inline_result":
+        return UpdateType.CHOSEN_INLINE_QUERY;
+      case "callback_query":
+        return UpdateType.CALLBACK_QUERY;
+      case "shipping_query":
+        return UpdateType.SHIPPING_QUERY;
+      case "pre_checkout_query":
+        return UpdateType.PRE_CHECKOUT_QUERY;
+      default:
+        return null;
+    }
+  }
+
+  private void parsePayload(JsonParser parser, UpdateType type) throws IOException {
+    boolean message = type != UpdateType.CALLBACK_QUERY && type != UpdateType.INLINE_QUERY
+        && type != UpdateType.CHOSEN_INLINE_QUERY && type != UpdateType.SHIPPING_QUERY
+        && type != UpdateType.PRE_CHECKOUT_QUERY;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if ("from".equals(field) && token == JsonToken.START_OBJECT) {
+        parseUser(parser);
+      } else if (message) {
+        parseMessageField(parser, field, token);
+      } else if (type == UpdateType.CALLBACK_QUERY) {
+        if ("data".equals(field) && token == JsonToken.VALUE_STRING) {
+          callbackData = parser.getText();
+        } else if ("game_short_name".equals(field) && token == JsonToken.VALUE_STRING) {
+          gameShortName = parser.getText();
+        } else if ("message".equals(field) && token == JsonToken.START_OBJECT) {
+          parseCallbackMessage(parser);
+        } else {
+          parser.skipChildren();
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private void parseMessageField(JsonParser parser, String field, JsonToken token)
+      throws IOException {
+    switch (field) {
+      case "chat":
+        parseChat(parser, token);
+        break;
+      case "text":
+        if (token == JsonToken.VALUE_STRING) {
+          text = parser.getText();
+        }
+        break;
+      case "new_chat_members":
+        if (token == JsonToken.START_ARRAY) {
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            newChatMembers = true;
+            parser.skipChildren();
+          }
+        }
+        break;
+      case "left_chat_member":
+        leftChatMember = token == JsonToken.START_OBJECT;
+        parser.skipChildren();
+        break;
+      default:
+        parser.skipChildren();
+    }
+  }
+
+  private void parseCallbackMessage(JsonParser parser) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if ("chat".equals(field)) {
+        parseChat(parser, token);
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private void parseChat(JsonParser parser, JsonToken token) throws IOException {
+    if (token != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if ("id".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+        chatId = parser.getLongValue();
+      } else if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+        chatType = parser.getText();
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private void parseUser(JsonParser parser) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if ("id".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+        userId = parser.getIntValue();
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  /**
+   * Returns locality of a message chat, like {@link RequestResolver} defines it.
+   *
+   * @return null if the chat type is unknown
+   */
+  public Locality getLocality() {
+    if (chatType == null) {
+      return null;
+    }
+    switch (chatType) {
+      case "private":
+        return Locality.PRIVATE;
+      case "channel":
+        return Locality.CHANNEL;
+      case "supergroup":
+        return Locality.SUPERGROUP;
+      case "group":
+        return Locality.GROUP;
+      default:
+        return null;
+    }
+  }
+
+  public Integer getUpdateId() {
+    return updateId;
+  }
+
+  /**
+   * Returns the type of an update, null if the type is not supported.
+   */
+  public UpdateType getType() {
+    return type;
+  }
+
+  /**
+   * Returns the chat id of a message, a channel post or a callback message.
+   */
+  public Long getChatId() {
+    return chatId;
+  }
+
+  public String getChatType() {
+    return chatType;
+  }
+
+  /**
+   * Returns the id of a user who sent the update.
+   */
+  public Integer getUserId() {
+    return userId;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public String getCallbackData() {
+    return callbackData;
+  }
+
+  public String getGameShortName() {
+    return gameShortName;
+  }
+
+  public boolean hasNewChatMembers() {
+    return newChatMembers;
+  }
+
+  public boolean hasLeftChatMember() {
+    return leftChatMember;
+  }
+}
@@ -12,21 +12,34 @@ import com.github.snqlby.tgwebhook.methods.LeaveMethod;
 import com.github.snqlby.tgwebhook.methods.MessageMethod;
 import com.github.snqlby.tgwebhook.methods.PreCheckoutMethod;
 import com.github.snqlby.tgwebhook.methods.ShippingMethod;
+import com.github.snqlby.tgwebhook.methods.TextMethod;
 import java.lang.annotation.Annotation;
 import java.util.Arrays;
 import java.util.List;
+import org.telegram.telegrambots.meta.api.objects.Update;
 
 public enum UpdateType {
   INLINE_QUERY(SubUpdateType.INLINE_QUERY),
   CHOSEN_INLINE_QUERY(SubUpdateType.CHOSEN_INLINE_QUERY),
   CALLBACK_QUERY(SubUpdateType.CALLBACK_QUERY),
-  MESSAGE(SubUpdateType.MESSAGE, SubUpdateType.COMMAND, SubUpdateType.JOIN, SubUpdateType.LEAVE),
+  MESSAGE(SubUpdateType.MESSAGE, SubUpdateType.COMMAND, SubUpdateType.TEXT, SubUpdateType.JOIN,
+      SubUpdateType.LEAVE),
   EDITED_MESSAGE(SubUpdateType.EDITED_MESSAGE),
   CHANNEL_POST(SubUpdateType.CHANNEL_POST),
   EDITED_CHANNEL_POST(SubUpdateType.EDITED_CHANNEL_POST),
   SHIPPING_QUERY(SubUpdateType.SHIPPING_QUERY),
   PRE_CHECKOUT_QUERY(SubUpdateType.PRE_CHECKOUT_QUERY);
 
+  private static final UpdateType[] parents = new UpdateType[SubUpdateType.values().length];
+
+  static {
+    for (UpdateType type : values()) {
+      for (SubUpdateType subType : type.subTypes) {
+        parents[subType.ordinal()] = type;
+      }
+    }
+  }
+
   private List<SubUpdateType> subTypes;
 
   UpdateType(SubUpdateType... subTypes) {
@@ -37,12 +50,41 @@ public enum UpdateType {
     return subTypes;
   }
 
+  /**
+   * Finds the type of an update.
+   *
+   * @return null if the update doesn't contain a supported object
+   */
+  public static UpdateType of(Update update) {
+    if (update.hasChosenInlineQuery()) {
+      return CHOSEN_INLINE_QUERY;
+    } else if (update.hasInlineQuery()) {
+      return INLINE_QUERY;
+    } else if (update.hasCallbackQuery()) {
+      return CALLBACK_QUERY;
+    } else if (update.hasEditedMessage()) {
+      return EDITED_MESSAGE;
+    } else if (update.hasEditedChannelPost()) {
+      return EDITED_CHANNEL_POST;
+    } else if (update.hasChannelPost()) {
+      return CHANNEL_POST;
+    } else if (update.hasShippingQuery()) {
+      return SHIPPING_QUERY;
+    } else if (update.hasPreCheckoutQuery()) {
+      return PRE_CHECKOUT_QUERY;
+    } else if (update.hasMessage()) {
+      return MESSAGE;
+    }
+    return null;
+  }
+
   public enum SubUpdateType {
     INLINE_QUERY(InlineMethod.class),
     CHOSEN_INLINE_QUERY(ChosenInlineMethod.class),
     CALLBACK_QUERY(CallbackMethod.class),
     MESSAGE(MessageMethod.class),
     COMMAND(CommandMethod.class),
+    TEXT(TextMethod.class),
     JOIN(JoinMethod.class),
     LEAVE(LeaveMethod.class),
     EDITED_MESSAGE(EditedMessageMethod.class),
@@ -73,5 +115,12 @@ public enum UpdateType {
     public Class<? extends Annotation> getAnnotation() {
       return annotation;
     }
+
+    /**
+     * Returns UpdateType which contains this element.
+     */
+    public UpdateType getParent() {
+      return parents[ordinal()];
+    }
   }
 }
@@ -13,6 +13,10 @@ import java.lang.annotation.Target;
  * <p>The method must contain these args and return back the following:</p>
  * {@code public BotApiMethod yourMethodName(AbsSender,CallbackQuery,CallbackOrigin)}
  *
+ * <p>The method may also accept parameters extracted from data or game_short_name:</p>
+ * {@code public BotApiMethod yourMethodName(AbsSender,CallbackQuery,CallbackOrigin,
+ * Map<String,String>)}
+ *
  *
  * <p>Telegram API: CallbackQuery represents an incoming callback query from a
  * callback button in an inline keyboard. If the button that originated the query was attached to a
@@ -31,11 +35,16 @@ public @interface CallbackMethod {
 
   /**
    * Accepted CallbackQuery.data values.
+   *
+   * <p>A value can be an exact string ("vote"), a prefix ending with an asterisk ("vote:*") or a
+   * template with named parameters ("vote:{id}:{dir}").</p>
+   *
+   * @see com.github.snqlby.tgwebhook.CallbackIndex
    */
   String[] data() default "";
 
   /**
-   * Accepted CallbackQuery.game_short_name values.
+   * Accepted CallbackQuery.game_short_name values. Supports the same patterns as {@link #data()}.
    */
   String[] game_short_name() default "";
 
@@ -55,4 +64,12 @@ public @interface CallbackMethod {
    */
   CallbackOrigin[] origin() default CallbackOrigin.ALL;
 
+  /**
+   * Conversation state in which the method is selected, empty for any state. Methods for the
+   * current state take precedence over methods for any state.
+   *
+   * @see com.github.snqlby.tgwebhook.state.ConversationStore
+   */
+  String state() default "";
+
 }
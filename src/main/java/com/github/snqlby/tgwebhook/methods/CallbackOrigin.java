@@ -28,6 +28,31 @@ public enum CallbackOrigin {
     return methodOrigins.contains(ALL) || methodOrigins.contains(updateOrigin);
   }
 
+  /**
+   * Converts accepted origins of a method into a bitmask.
+   *
+   * @param origins values declared by a method's annotation
+   * @return mask with all bits set if ALL is declared
+   */
+  public static int mask(CallbackOrigin[] origins) {
+    int mask = 0;
+    for (CallbackOrigin origin : origins) {
+      if (origin == ALL) {
+        return -1;
+      }
+      mask |= 1 << origin.ordinal();
+    }
+    return mask;
+  }
+
+  /**
+   * Returns the bit of a received origin which can be tested against
+   * {@link #mask(CallbackOrigin[])}.
+   */
+  public int bit() {
+    return 1 << ordinal();
+  }
+
   /**
    * Defines CallbackOrigin for a received update.
    *
@@ -15,6 +15,12 @@ import java.lang.annotation.Target;
  * <p>The method must contain these args and return back the following:</p>
  * {@code public BotApiMethod yourMethodName(AbsSender,Message,List<String>)}
  *
+ * <p>Arguments may be declared as typed parameters instead of the list, for example
+ * {@code (AbsSender,Message,long,int,String)}. Supported types are String, long, int, double and
+ * boolean, a trailing String receives the rest of the command. The method is selected only if the
+ * arguments can be converted.</p>
+ *
+ * @see com.github.snqlby.tgwebhook.CommandArguments
  * @see MessageMethod
  */
 @Target({ElementType.METHOD})
@@ -34,4 +40,12 @@ public @interface CommandMethod {
    * @see Locality
    */
   Locality[] locality() default Locality.ALL;
+
+  /**
+   * Conversation state in which the method is selected, empty for any state. Methods for the
+   * current state take precedence over methods for any state.
+   *
+   * @see com.github.snqlby.tgwebhook.state.ConversationStore
+   */
+  String state() default "";
 }
@@ -0,0 +1,31 @@
+package com.github.snqlby.tgwebhook.methods;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Defines the order of a handler method among other methods which accept the same update. The
+ * first suitable method is invoked, methods with lower values come first.</p>
+ *
+ * <p>The annotation can be put on a method or on a handler class, which sets the order of all
+ * its methods. Methods without it have the order {@link #DEFAULT}, methods with the same order
+ * are taken in the order of registration of their handlers and then by name.</p>
+ *
+ * <p>CallbackMethod routes are ordered by their patterns first: exact values, templates and then
+ * prefixes. The order applies to routes with the same pattern kind.</p>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface HandlerOrder {
+
+  int DEFAULT = 0;
+
+  int value();
+
+}
@@ -11,6 +11,10 @@ import java.lang.annotation.Target;
  * <p>Indicates a method which will be used for InlineQuery requests.</p>
  * <p>The method must contain these args and return back the following:</p>
  * {@code public BotApiMethod yourMethodName(AbsSender,InlineQuery)}
+ *
+ * <p>If {@link #supersede()} is set, the method may also accept a token which is cancelled by a
+ * newer query of the user:</p>
+ * {@code public BotApiMethod yourMethodName(AbsSender,InlineQuery,CancellationToken)}
  */
 @Target({ElementType.METHOD})
 @Retention(RetentionPolicy.RUNTIME)
@@ -18,4 +22,33 @@ import java.lang.annotation.Target;
 @Documented
 public @interface InlineMethod {
 
+  /**
+   * Seconds to keep answers of the method in a local cache, so repeated queries are answered
+   * without invoking it. 0 disables the cache.
+   *
+   * <p>It doesn't affect AnswerInlineQuery.cache_time, which is the cache time of the Telegram
+   * server.</p>
+   *
+   * @see com.github.snqlby.tgwebhook.InlineCache
+   */
+  int cacheTtl() default 0;
+
+  /**
+   * Maximal count of cached answers.
+   */
+  int cacheSize() default 1024;
+
+  /**
+   * Caches answers for every user separately, for example if results depend on the user.
+   */
+  boolean cachePerUser() default false;
+
+  /**
+   * Answers only the latest query of a user. Older queries which wait for an executor are
+   * skipped, running ones are cancelled and their answers are dropped.
+   *
+   * @see com.github.snqlby.tgwebhook.CancellationToken
+   */
+  boolean supersede() default false;
+
 }
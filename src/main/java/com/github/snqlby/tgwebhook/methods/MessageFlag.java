@@ -24,6 +24,8 @@ public enum MessageFlag {
   VIDEO_NOTE(p -> p.getVideoNote() != null),
   VENUE(p -> p.getVenue() != null);
 
+  private static final MessageFlag[] VALUES = values();
+
   private Predicate<Message> predicate;
 
   MessageFlag(Predicate<Message> predicate) {
@@ -46,6 +48,41 @@ public enum MessageFlag {
     return flags.stream().anyMatch(p -> p.test(message));
   }
 
+  /**
+   * Converts accepted flags of a method into a bitmask.
+   *
+   * @param flags values declared by a method's annotation
+   * @return mask with all bits set if ALL is declared
+   * @see #findFlags(Message)
+   */
+  public static int mask(MessageFlag[] flags) {
+    int mask = 0;
+    for (MessageFlag flag : flags) {
+      if (flag == ALL) {
+        return -1;
+      }
+      mask |= 1 << flag.ordinal();
+    }
+    return mask;
+  }
+
+  /**
+   * Tests every flag against a message once. The result can be tested against
+   * {@link #mask(MessageFlag[])} of any method.
+   *
+   * @param message message from update
+   * @return bits of the flags which the message contains, the bit of ALL is always set
+   */
+  public static int findFlags(Message message) {
+    int flags = 1 << ALL.ordinal();
+    for (int i = 1; i < VALUES.length; i++) {
+      if (VALUES[i].test(message)) {
+        flags |= 1 << i;
+      }
+    }
+    return flags;
+  }
+
   public boolean test(Message message) {
     return predicate.test(message);
   }
@@ -13,6 +13,9 @@ import java.lang.annotation.Target;
  * <p>The method must contain these args and return back the following:</p>
  * {@code public BotApiMethod yourMethodName(AbsSender,Message)}
  *
+ * <p>If {@link #mediaGroupWindow()} is set, the method may also accept messages of an album:</p>
+ * {@code public BotApiMethod yourMethodName(AbsSender,Message,List<Message>)}
+ *
  * @see CommandMethod
  */
 @Target({ElementType.METHOD})
@@ -34,4 +37,30 @@ public @interface MessageMethod {
    * @see MessageFlag
    */
   MessageFlag[] flag() default MessageFlag.ALL;
+
+  /**
+   * Conversation state in which the method is selected, empty for any state. Methods for the
+   * current state take precedence over methods for any state.
+   *
+   * @see com.github.snqlby.tgwebhook.state.ConversationStore
+   */
+  String state() default "";
+
+  /**
+   * Milliseconds to wait for the next message of a media group (an album). Messages of a group
+   * are buffered until no message arrives for this time, then the method is invoked once with
+   * the first message and the whole group. 0 invokes the method for every message.
+   *
+   * <p>Buffered messages are not answered by the webhook response, a result of the method is sent
+   * by the bot. Observers receive every message.</p>
+   *
+   * @see com.github.snqlby.tgwebhook.MediaGroupBuffer
+   */
+  int mediaGroupWindow() default 0;
+
+  /**
+   * Maximal count of media groups which are buffered at once, messages of other groups are
+   * passed to the method one by one.
+   */
+  int mediaGroupLimit() default 1024;
 }
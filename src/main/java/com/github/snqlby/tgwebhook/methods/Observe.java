@@ -0,0 +1,25 @@
+package com.github.snqlby.tgwebhook.methods;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks a handler method, or all methods of a handler class, as an observer. An observer
+ * receives every update it accepts, in addition to the method which answers it, for example to
+ * collect statistics or to detect spam.</p>
+ *
+ * <p>Observers are invoked on the executor of the resolver in parallel with the answering method,
+ * their results are ignored. Observers are not counted when several answering methods are
+ * found.</p>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface Observe {
+
+}
@@ -0,0 +1,64 @@
+package com.github.snqlby.tgwebhook.methods;
+
+import com.github.snqlby.tgwebhook.Locality;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Indicates a method which will be used for Message requests with a text which contains any
+ * of the declared triggers. This annotation takes precedence over MessageMethod, a message without
+ * matched triggers is passed to MessageMethod. Observers of MessageMethod receive a message in
+ * either case.</p>
+ *
+ * <p>The method must contain these args and return back the following:</p>
+ * {@code public BotApiMethod yourMethodName(AbsSender,Message,TextMatches)}
+ *
+ * <p>Keywords and phrases of all methods in a space are compiled into a single automaton, so a
+ * text is scanned once regardless of the count of triggers.</p>
+ *
+ * @see com.github.snqlby.tgwebhook.TextIndex
+ * @see com.github.snqlby.tgwebhook.TextMatches
+ * @see MessageMethod
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface TextMethod {
+
+  /**
+   * Whole words, for example "spam". Case is ignored.
+   */
+  String[] keyword() default {};
+
+  /**
+   * Phrases which may occur anywhere in a text, for example "t.me/". Case is ignored.
+   */
+  String[] phrase() default {};
+
+  /**
+   * Regular expressions, for example "https?://\\S+".
+   *
+   * @see java.util.regex.Pattern
+   */
+  String[] regex() default {};
+
+  /**
+   * Locality for a message.
+   *
+   * @see Locality
+   */
+  Locality[] locality() default Locality.ALL;
+
+  /**
+   * Conversation state in which the method is selected, empty for any state. Methods for the
+   * current state take precedence over methods for any state.
+   *
+   * @see com.github.snqlby.tgwebhook.state.ConversationStore
+   */
+  String state() default "";
+}
@@ -0,0 +1,46 @@
+package com.github.snqlby.tgwebhook.metrics;
+
+import com.github.snqlby.tgwebhook.HandlerMethod;
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+
+/**
+ * Receives measurements of {@link com.github.snqlby.tgwebhook.RequestResolver}.
+ *
+ * <p>Methods are called concurrently from threads which process updates, so implementations
+ * must be thread-safe and shouldn't block. All methods do nothing by default.</p>
+ *
+ * @see InMemoryMetrics
+ * @see MicrometerMetrics
+ */
+public interface DispatchMetrics {
+
+  /**
+   * Disabled metrics. The resolver doesn't even read the clock if it uses them.
+   */
+  DispatchMetrics NOOP = new DispatchMetrics() {
+  };
+
+  /**
+   * Records selection of a handler for an update.
+   *
+   * @param routingNanos time from the start of processing to the selection of a handler
+   */
+  default void recordDispatch(String space, SubUpdateType type, DispatchResult result,
+      long routingNanos) {
+  }
+
+  /**
+   * Records a completed invocation of a handler. An asynchronous result is recorded when it
+   * completes.
+   *
+   * @param nanos time spent in the handler
+   */
+  default void recordInvocation(String space, HandlerMethod method, long nanos) {
+  }
+
+  /**
+   * Records an exception thrown by a handler or its asynchronous result.
+   */
+  default void recordException(String space, HandlerMethod method, Throwable exception) {
+  }
+}
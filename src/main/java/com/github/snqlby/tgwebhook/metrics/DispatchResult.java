@@ -0,0 +1,26 @@
+package com.github.snqlby.tgwebhook.metrics;
+
+/**
+ * Result of handler selection for an update.
+ */
+public enum DispatchResult {
+  /**
+   * Exactly one handler accepts the update.
+   */
+  MATCHED,
+  /**
+   * No handler accepts the update.
+   */
+  UNMATCHED,
+  /**
+   * Several handlers accept the update, the first one is invoked.
+   */
+  AMBIGUOUS;
+
+  /**
+   * Returns the result for a count of suitable handlers.
+   */
+  public static DispatchResult of(int found) {
+    return found == 0 ? UNMATCHED : found == 1 ? MATCHED : AMBIGUOUS;
+  }
+}
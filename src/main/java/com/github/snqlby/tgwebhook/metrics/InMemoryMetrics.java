@@ -0,0 +1,115 @@
+package com.github.snqlby.tgwebhook.metrics;
+
+import com.github.snqlby.tgwebhook.HandlerMethod;
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps metrics in memory, for example to expose them by an own endpoint.
+ *
+ * <pre>{@code
+ * InMemoryMetrics metrics = new InMemoryMetrics();
+ * RequestResolver resolver = RequestResolver.builder(space, bot).setMetrics(metrics).build();
+ * long p99 = metrics.getHandlerMetrics(method).getLatency().getValueAtPercentile(99);
+ * }</pre>
+ */
+public class InMemoryMetrics implements DispatchMetrics {
+
+  private static final int RESULTS = DispatchResult.values().length;
+
+  private final ConcurrentMap<String, SpaceMetrics> spaces = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Method, HandlerMetrics> handlers = new ConcurrentHashMap<>();
+
+  @Override
+  public void recordDispatch(String space, SubUpdateType type, DispatchResult result,
+      long routingNanos) {
+    SpaceMetrics metrics = getSpaceMetrics(space);
+    metrics.dispatches[type.ordinal() * RESULTS + result.ordinal()].increment();
+    metrics.routing.record(routingNanos);
+  }
+
+  @Override
+  public void recordInvocation(String space, HandlerMethod method, long nanos) {
+    getHandlerMetrics(method.getMethod()).latency.record(nanos);
+  }
+
+  @Override
+  public void recordException(String space, HandlerMethod method, Throwable exception) {
+    getHandlerMetrics(method.getMethod()).exceptions.increment();
+  }
+
+  /**
+   * Returns the count of dispatches with the given result.
+   */
+  public long getDispatchCount(String space, SubUpdateType type, DispatchResult result) {
+    SpaceMetrics metrics = spaces.get(space);
+    return metrics == null ? 0
+        : metrics.dispatches[type.ordinal() * RESULTS + result.ordinal()].sum();
+  }
+
+  /**
+   * Returns time spent in routing of updates of a space, before handlers are invoked.
+   */
+  public LatencyHistogram getRoutingLatency(String space) {
+    return getSpaceMetrics(space).routing;
+  }
+
+  /**
+   * Returns metrics of a handler method, which are shared by all spaces.
+   */
+  public HandlerMetrics getHandlerMetrics(Method method) {
+    HandlerMetrics metrics = handlers.get(method);
+    // ConcurrentHashMap.computeIfAbsent locks a bin even if the key is present
+    return metrics != null ? metrics : handlers.computeIfAbsent(method, m -> new HandlerMetrics());
+  }
+
+  /**
+   * Returns metrics of every invoked handler method.
+   */
+  public Map<Method, HandlerMetrics> getHandlerMetrics() {
+    return Collections.unmodifiableMap(handlers);
+  }
+
+  private SpaceMetrics getSpaceMetrics(String space) {
+    SpaceMetrics metrics = spaces.get(space);
+    return metrics != null ? metrics : spaces.computeIfAbsent(space, s -> new SpaceMetrics());
+  }
+
+  public static final class HandlerMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder exceptions = new LongAdder();
+
+    private HandlerMetrics() {
+    }
+
+    /**
+     * Returns time spent in the handler, including completion of asynchronous results.
+     */
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getExceptionCount() {
+      return exceptions.sum();
+    }
+  }
+
+  private static final class SpaceMetrics {
+
+    private final LongAdder[] dispatches =
+        new LongAdder[SubUpdateType.values().length * RESULTS];
+    private final LatencyHistogram routing = new LatencyHistogram();
+
+    private SpaceMetrics() {
+      for (int i = 0; i < dispatches.length; i++) {
+        dispatches[i] = new LongAdder();
+      }
+    }
+  }
+}
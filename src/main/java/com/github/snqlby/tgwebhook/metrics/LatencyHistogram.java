@@ -0,0 +1,108 @@
+package com.github.snqlby.tgwebhook.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds.
+ *
+ * <p>Buckets are log-linear like in HdrHistogram: every power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so a reported value differs from a recorded one by less than
+ * 3.2%. Values above one hour are counted in the last bucket. Recording is a single atomic
+ * increment, reading is not atomic and may observe a concurrent recording partially.</p>
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * Highest trackable value, an hour in nanoseconds.
+   */
+  private static final long MAX_VALUE = 3_600_000_000_000L;
+  private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS * 2) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  /**
+   * Returns the highest value which is counted in a bucket.
+   */
+  private static long highestValue(int index) {
+    if (index < SUB_BUCKETS * 2) {
+      return index;
+    }
+    int shift = (index >> SUB_BUCKET_BITS) - 1;
+    long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  /**
+   * Records a duration, negative values are recorded as zero.
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(Math.min(value, MAX_VALUE)));
+    count.increment();
+    total.add(value);
+    if (value > max.get()) {
+      max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotal() {
+    return total.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) getTotal() / count;
+  }
+
+  /**
+   * Returns a value which is not exceeded by the given percentage of recorded values.
+   *
+   * @param percentile value between 0 and 100
+   * @return 0 if nothing is recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long recorded = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      recorded += snapshot[i];
+    }
+    if (recorded == 0) {
+      return 0;
+    }
+
+    long target = Math.max(1, (long) Math.ceil(recorded * Math.min(100, percentile) / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return Math.min(highestValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+}
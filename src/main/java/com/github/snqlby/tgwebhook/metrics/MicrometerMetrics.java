@@ -0,0 +1,91 @@
+package com.github.snqlby.tgwebhook.metrics;
+
+import com.github.snqlby.tgwebhook.HandlerMethod;
+import com.github.snqlby.tgwebhook.UpdateType.SubUpdateType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes metrics to a Micrometer registry. Micrometer is an optional dependency, it must be
+ * added to an application which uses this class.
+ *
+ * <ul>
+ * <li>{@code tgwebhook.dispatch} counter with space, type and result tags</li>
+ * <li>{@code tgwebhook.routing} timer with the space tag</li>
+ * <li>{@code tgwebhook.handler} timer with the handler tag</li>
+ * <li>{@code tgwebhook.handler.exceptions} counter with handler and exception tags</li>
+ * </ul>
+ *
+ * <p>Meters are cached, so recording doesn't look them up in the registry.</p>
+ */
+public class MicrometerMetrics implements DispatchMetrics {
+
+  private static final int RESULTS = DispatchResult.values().length;
+
+  private final MeterRegistry registry;
+  private final ConcurrentMap<String, SpaceMeters> spaces = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Method, Timer> handlers = new ConcurrentHashMap<>();
+
+  public MicrometerMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public void recordDispatch(String space, SubUpdateType type, DispatchResult result,
+      long routingNanos) {
+    SpaceMeters meters = getSpaceMeters(space);
+    meters.dispatches[type.ordinal() * RESULTS + result.ordinal()].increment();
+    meters.routing.record(routingNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void recordInvocation(String space, HandlerMethod method, long nanos) {
+    Timer timer = handlers.get(method.getMethod());
+    if (timer == null) {
+      timer = handlers.computeIfAbsent(method.getMethod(), m -> Timer.builder("tgwebhook.handler")
+          .tag("handler", getName(m))
+          .publishPercentileHistogram()
+          .register(registry));
+    }
+    timer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void recordException(String space, HandlerMethod method, Throwable exception) {
+    registry.counter("tgwebhook.handler.exceptions", "handler", getName(method.getMethod()),
+        "exception", exception.getClass().getSimpleName()).increment();
+  }
+
+  private static String getName(Method method) {
+    return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+  }
+
+  private SpaceMeters getSpaceMeters(String space) {
+    SpaceMeters meters = spaces.get(space);
+    return meters != null ? meters : spaces.computeIfAbsent(space, SpaceMeters::new);
+  }
+
+  private final class SpaceMeters {
+
+    private final Counter[] dispatches = new Counter[SubUpdateType.values().length * RESULTS];
+    private final Timer routing;
+
+    private SpaceMeters(String space) {
+      for (SubUpdateType type : SubUpdateType.values()) {
+        for (DispatchResult result : DispatchResult.values()) {
+          dispatches[type.ordinal() * RESULTS + result.ordinal()] = registry.counter(
+              "tgwebhook.dispatch", "space", space, "type", type.name(), "result", result.name());
+        }
+      }
+      this.routing = Timer.builder("tgwebhook.routing")
+          .tag("space", space)
+          .publishPercentileHistogram()
+          .register(registry);
+    }
+  }
+}
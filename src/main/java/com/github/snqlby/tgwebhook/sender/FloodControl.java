@@ -0,0 +1,364 @@
+package com.github.snqlby.tgwebhook.sender;
+
+import com.github.snqlby.tgwebhook.utils.AsyncExecutors;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+/**
+ * Schedules outgoing requests within the Telegram flood limits: about 30 messages per second
+ * overall, a message per second in a private chat and 20 messages per minute in a group or a
+ * channel.
+ *
+ * <p>Every chat and the bot as a whole have a token bucket. Requests wait in a queue ordered by
+ * priority and then by submission, a single thread takes them and passes requests with available
+ * tokens to the executor. A request to a chat without tokens is put aside until its chat bucket
+ * is refilled, so it doesn't hold requests to other chats. If the server still answers with 429,
+ * the chat is paused for {@code retry_after} seconds and the request is repeated.</p>
+ *
+ * <pre>{@code
+ * FloodControl control = new FloodControl(bot);
+ * RequestResolver resolver = RequestResolver.builder(space, bot)
+ *     .setSender(new FloodControlSender(control))
+ *     .build();
+ * }</pre>
+ */
+public class FloodControl implements AutoCloseable {
+
+  public static final int DEFAULT_GLOBAL_RATE = 30;
+  public static final int DEFAULT_CHAT_RATE = 1;
+  public static final int DEFAULT_GROUP_RATE = 20;
+
+  public static final int PRIORITY_LOW = -10;
+  public static final int PRIORITY_NORMAL = 0;
+  public static final int PRIORITY_HIGH = 10;
+
+  private static final Logger LOG = LoggerFactory.getLogger(FloodControl.class);
+
+  private static final int MAX_RETRIES = 5;
+  private static final long DEFAULT_RETRY_AFTER = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_IDLE = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long CLEANUP_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+  private static final ClassValue<MethodHandle> CHAT_ID_GETTERS = new ClassValue<MethodHandle>() {
+    @Override
+    protected MethodHandle computeValue(Class<?> type) {
+      try {
+        return MethodHandles.publicLookup().unreflect(type.getMethod("getChatId"))
+            .asType(MethodType.methodType(Object.class, Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        return null;
+      }
+    }
+  };
+
+  private final AbsSender target;
+  private final Executor executor;
+  private final long chatInterval;
+  private final long groupInterval;
+  private final TokenBucket global;
+  private final ConcurrentMap<String, TokenBucket> chats = new ConcurrentHashMap<>();
+  private final PriorityBlockingQueue<Task<?>> ready =
+      new PriorityBlockingQueue<>(64, Comparator.<Task<?>>comparingInt(task -> -task.priority)
+          .thenComparingLong(task -> task.sequence));
+  private final DelayQueue<Task<?>> delayed = new DelayQueue<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private final Thread dispatcher;
+  private volatile boolean closed;
+
+  /**
+   * Creates a scheduler with the default limits, which sends requests on the default executor.
+   *
+   * @param target sends requests to the server, usually the bot
+   */
+  public FloodControl(AbsSender target) {
+    this(target, DEFAULT_GLOBAL_RATE, DEFAULT_CHAT_RATE, DEFAULT_GROUP_RATE,
+        AsyncExecutors.defaultExecutor());
+  }
+
+  /**
+   * Creates a scheduler.
+   *
+   * @param target sends requests to the server, usually the bot
+   * @param globalRate requests per second to all chats
+   * @param chatRate requests per second to a private chat
+   * @param groupRate requests per minute to a group or a channel
+   * @param executor sends requests, a request blocks a thread until the server responds
+   */
+  public FloodControl(AbsSender target, int globalRate, int chatRate, int groupRate,
+      Executor executor) {
+    if (globalRate < 1 || chatRate < 1 || groupRate < 1) {
+      throw new IllegalArgumentException("Rates must be positive");
+    }
+    this.target = target;
+    this.executor = executor;
+    this.chatInterval = TimeUnit.SECONDS.toNanos(1) / chatRate;
+    this.groupInterval = TimeUnit.MINUTES.toNanos(1) / groupRate;
+    this.global = new TokenBucket(TimeUnit.SECONDS.toNanos(1) / globalRate, 1, System.nanoTime());
+    this.dispatcher = new Thread(this::dispatch, "tgwebhook-flood-control");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Queues a method with the normal priority.
+   */
+  public <T extends Serializable> CompletableFuture<T> submit(BotApiMethod<T> method) {
+    return submit(method, PRIORITY_NORMAL);
+  }
+
+  /**
+   * Queues a method. The chat is taken from the {@code chatId} property of the method, methods
+   * without it are limited by the global rate only.
+   *
+   * @param priority requests with a higher priority are sent first
+   * @return result of the method, completes exceptionally if the server rejects it
+   */
+  public <T extends Serializable> CompletableFuture<T> submit(BotApiMethod<T> method,
+      int priority) {
+    return submit(findChatId(method), priority, () -> target.execute(method));
+  }
+
+  /**
+   * Queues a request, for example a method which uploads files.
+   *
+   * @param chatId chat of the request, null if it doesn't send to a chat
+   * @param priority requests with a higher priority are sent first
+   * @param request sends the request when it is allowed
+   * @return result of the request, completes exceptionally if the server rejects it
+   */
+  public <T> CompletableFuture<T> submit(String chatId, int priority, Request<T> request) {
+    Task<T> task = new Task<>(request, chatId, priority, sequence.getAndIncrement());
+    if (closed) {
+      task.result.completeExceptionally(new RejectedExecutionException("Flood control is closed"));
+      return task.result;
+    }
+    ready.add(task);
+    if (closed && ready.remove(task)) {
+      task.result.completeExceptionally(new RejectedExecutionException("Flood control is closed"));
+    }
+    return task.result;
+  }
+
+  AbsSender getTarget() {
+    return target;
+  }
+
+  /**
+   * Returns the count of queued requests, including requests which wait for their chat.
+   */
+  public int getQueueDepth() {
+    return ready.size() + delayed.size();
+  }
+
+  /**
+   * Stops the scheduler. Queued requests complete with {@link RejectedExecutionException},
+   * requests which are already sent are not interrupted.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    dispatcher.interrupt();
+    List<Task<?>> rejected = new ArrayList<>();
+    ready.drainTo(rejected);
+    rejected.addAll(delayed);
+    delayed.clear();
+    for (Task<?> task : rejected) {
+      task.result.completeExceptionally(new RejectedExecutionException("Flood control is closed"));
+    }
+  }
+
+  /**
+   * Returns the {@code chatId} property of a method, null if it doesn't have one.
+   */
+  static String findChatId(Object method) {
+    MethodHandle getter = CHAT_ID_GETTERS.get(method.getClass());
+    if (getter == null) {
+      return null;
+    }
+    try {
+      return Objects.toString(getter.invokeExact(method), null);
+    } catch (Throwable e) {
+      return null;
+    }
+  }
+
+  private void dispatch() {
+    long cleanup = System.nanoTime() + CLEANUP_INTERVAL;
+    try {
+      while (!closed) {
+        delayed.drainTo(ready);
+        long now = System.nanoTime();
+        long wait = global.delay(now);
+        if (wait > 0) {
+          TimeUnit.NANOSECONDS.sleep(wait);
+          continue;
+        }
+
+        if (now - cleanup > 0) {
+          chats.values().removeIf(bucket -> bucket.isFull(now));
+          cleanup = now + CLEANUP_INTERVAL;
+        }
+        Task<?> task = ready.poll(findIdleTime(), TimeUnit.NANOSECONDS);
+        if (task != null) {
+          schedule(task);
+        }
+      }
+    } catch (InterruptedException e) {
+      // The scheduler is closed
+    }
+  }
+
+  /**
+   * Returns how long the dispatcher may wait for a new request, so it doesn't miss a delayed one.
+   */
+  private long findIdleTime() {
+    Task<?> next = delayed.peek();
+    return next == null ? MAX_IDLE : Math.min(MAX_IDLE, next.getDelay(TimeUnit.NANOSECONDS));
+  }
+
+  private void schedule(Task<?> task) {
+    long now = System.nanoTime();
+    TokenBucket chat = task.chatId == null ? null : getBucket(task.chatId, now);
+    // The chat is checked without taking a token, so a task keeps it if the bot is paused
+    long wait = chat == null ? 0 : chat.delay(now);
+    if (wait > 0) {
+      delay(task, now, wait);
+      return;
+    }
+    if (global.tryAcquire(now) > 0) {
+      // The bot was paused after the check by a concurrent response
+      ready.add(task);
+      return;
+    }
+    wait = chat == null ? 0 : chat.tryAcquire(now);
+    if (wait > 0) {
+      // The chat was paused after the check by a concurrent response
+      delay(task, now, wait);
+      return;
+    }
+
+    try {
+      executor.execute(() -> send(task));
+    } catch (RejectedExecutionException e) {
+      task.result.completeExceptionally(e);
+    }
+  }
+
+  private void delay(Task<?> task, long now, long wait) {
+    task.readyAt = now + wait;
+    delayed.add(task);
+  }
+
+  private <T> void send(Task<T> task) {
+    try {
+      task.result.complete(task.request.send());
+    } catch (TelegramApiRequestException e) {
+      if (e.getErrorCode() == null || e.getErrorCode() != 429 || task.attempts >= MAX_RETRIES) {
+        task.result.completeExceptionally(e);
+        return;
+      }
+      retry(task, e);
+    } catch (Exception e) {
+      task.result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Pauses the chat of a rejected request, or the whole bot if the request has no chat, and
+   * queues the request again.
+   */
+  private void retry(Task<?> task, TelegramApiRequestException e) {
+    Integer retryAfter = e.getParameters() == null ? null : e.getParameters().getRetryAfter();
+    long now = System.nanoTime();
+    long until = now + (retryAfter == null ? DEFAULT_RETRY_AFTER
+        : TimeUnit.SECONDS.toNanos(retryAfter));
+    LOG.warn("Too many requests to chat {}, retrying in {} ms", task.chatId,
+        TimeUnit.NANOSECONDS.toMillis(until - now));
+
+    (task.chatId == null ? global : getBucket(task.chatId, now)).pause(until);
+    task.attempts++;
+    task.readyAt = until;
+    delayed.add(task);
+    if (closed && delayed.remove(task)) {
+      task.result.completeExceptionally(e);
+    }
+  }
+
+  private TokenBucket getBucket(String chatId, long now) {
+    TokenBucket bucket = chats.get(chatId);
+    if (bucket == null) {
+      bucket = chats.computeIfAbsent(chatId, id -> new TokenBucket(
+          isGroup(id) ? groupInterval : chatInterval, 1, now));
+    }
+    return bucket;
+  }
+
+  /**
+   * Checks if a chat is a group or a channel. Their ids are negative, channels may also be
+   * addressed by their usernames.
+   */
+  private static boolean isGroup(String chatId) {
+    return chatId.startsWith("-") || chatId.startsWith("@");
+  }
+
+  /**
+   * Sends a request to the server.
+   */
+  @FunctionalInterface
+  public interface Request<T> {
+
+    T send() throws TelegramApiException;
+  }
+
+  private static final class Task<T> implements Delayed {
+
+    private final Request<T> request;
+    private final String chatId;
+    private final int priority;
+    private final long sequence;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private volatile long readyAt;
+    private volatile int attempts;
+
+    private Task(Request<T> request, String chatId, int priority, long sequence) {
+      this.request = request;
+      this.chatId = chatId;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      Task<?> task = (Task<?>) other;
+      int result = Long.compare(readyAt - task.readyAt, 0);
+      return result != 0 ? result : Long.compare(sequence, task.sequence);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.github.snqlby.tgwebhook.sender;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.SetChatPhoto;
+import org.telegram.telegrambots.meta.api.methods.send.SendAnimation;
+import org.telegram.telegrambots.meta.api.methods.send.SendAudio;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.send.SendSticker;
+import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
+import org.telegram.telegrambots.meta.api.methods.send.SendVideoNote;
+import org.telegram.telegrambots.meta.api.methods.send.SendVoice;
+import org.telegram.telegrambots.meta.api.methods.stickers.AddStickerToSet;
+import org.telegram.telegrambots.meta.api.methods.stickers.CreateNewStickerSet;
+import org.telegram.telegrambots.meta.api.methods.stickers.UploadStickerFile;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.updateshandlers.SentCallback;
+
+/**
+ * Sender which passes every request through {@link FloodControl}, so it can be given to handlers
+ * instead of the bot. Synchronous methods block until the request is sent, asynchronous methods
+ * return immediately.
+ */
+public class FloodControlSender extends AbsSender {
+
+  private final FloodControl control;
+  private final int priority;
+
+  public FloodControlSender(FloodControl control) {
+    this(control, FloodControl.PRIORITY_NORMAL);
+  }
+
+  /**
+   * Creates a sender.
+   *
+   * @param priority priority of all requests of the sender
+   */
+  public FloodControlSender(FloodControl control, int priority) {
+    this.control = control;
+    this.priority = priority;
+  }
+
+  public FloodControl getFloodControl() {
+    return control;
+  }
+
+  @Override
+  protected <T extends Serializable, Method extends BotApiMethod<T>, Callback extends
+      SentCallback<T>> void sendApiMethodAsync(Method method, Callback callback) {
+    control.submit(method, priority).whenComplete((result, e) -> {
+      Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+      if (cause == null) {
+        callback.onResult(method, result);
+      } else if (cause instanceof TelegramApiRequestException) {
+        callback.onError(method, (TelegramApiRequestException) cause);
+      } else if (cause instanceof Exception) {
+        callback.onException(method, (Exception) cause);
+      } else {
+        callback.onException(method, new TelegramApiException(cause));
+      }
+    });
+  }
+
+  @Override
+  protected <T extends Serializable, Method extends BotApiMethod<T>> T sendApiMethod(
+      Method method) throws TelegramApiException {
+    return await(FloodControl.findChatId(method), () -> control.getTarget().execute(method));
+  }
+
+  @Override
+  public Message execute(SendDocument sendDocument) throws TelegramApiException {
+    return await(sendDocument.getChatId(), () -> control.getTarget().execute(sendDocument));
+  }
+
+  @Override
+  public Message execute(SendPhoto sendPhoto) throws TelegramApiException {
+    return await(sendPhoto.getChatId(), () -> control.getTarget().execute(sendPhoto));
+  }
+
+  @Override
+  public Message execute(SendVideo sendVideo) throws TelegramApiException {
+    return await(sendVideo.getChatId(), () -> control.getTarget().execute(sendVideo));
+  }
+
+  @Override
+  public Message execute(SendVideoNote sendVideoNote) throws TelegramApiException {
+    return await(sendVideoNote.getChatId(), () -> control.getTarget().execute(sendVideoNote));
+  }
+
+  @Override
+  public Message execute(SendSticker sendSticker) throws TelegramApiException {
+    return await(sendSticker.getChatId(), () -> control.getTarget().execute(sendSticker));
+  }
+
+  @Override
+  public Message execute(SendAudio sendAudio) throws TelegramApiException {
+    return await(sendAudio.getChatId(), () -> control.getTarget().execute(sendAudio));
+  }
+
+  @Override
+  public Message execute(SendVoice sendVoice) throws TelegramApiException {
+    return await(sendVoice.getChatId(), () -> control.getTarget().execute(sendVoice));
+  }
+
+  @Override
+  public List<Message> execute(SendMediaGroup sendMediaGroup) throws TelegramApiException {
+    return await(sendMediaGroup.getChatId(), () -> control.getTarget().execute(sendMediaGroup));
+  }
+
+  @Override
+  public Boolean execute(SetChatPhoto setChatPhoto) throws TelegramApiException {
+    return await(setChatPhoto.getChatId(), () -> control.getTarget().execute(setChatPhoto));
+  }
+
+  @Override
+  public Boolean execute(AddStickerToSet addStickerToSet) throws TelegramApiException {
+    return await(null, () -> control.getTarget().execute(addStickerToSet));
+  }
+
+  @Override
+  public Boolean execute(CreateNewStickerSet createNewStickerSet) throws TelegramApiException {
+    return await(null, () -> control.getTarget().execute(createNewStickerSet));
+  }
+
+  @Override
+  public File execute(UploadStickerFile uploadStickerFile) throws TelegramApiException {
+    return await(null, () -> control.getTarget().execute(uploadStickerFile));
+  }
+
+  @Override
+  public Serializable execute(EditMessageMedia editMessageMedia) throws TelegramApiException {
+    return await(editMessageMedia.getChatId(),
+        () -> control.getTarget().execute(editMessageMedia));
+  }
+
+  @Override
+  public Message execute(SendAnimation sendAnimation) throws TelegramApiException {
+    return await(sendAnimation.getChatId(), () -> control.getTarget().execute(sendAnimation));
+  }
+
+  /**
+   * Queues a request and waits for its result.
+   */
+  private <T> T await(String chatId, FloodControl.Request<T> request)
+      throws TelegramApiException {
+    try {
+      return control.submit(chatId, priority, request).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof TelegramApiException) {
+        throw (TelegramApiException) e.getCause();
+      }
+      throw new TelegramApiException(e.getCause());
+    } catch (CancellationException e) {
+      throw new TelegramApiException(e);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.github.snqlby.tgwebhook.sender;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept as a single timestamp, the theoretical arrival time of the next token
+ * (GCRA). Refill is implicit in the clock, so a bucket never needs a timer, and taking a token is
+ * a single CAS.
+ */
+final class TokenBucket {
+
+  /**
+   * Time to refill a single token.
+   */
+  private final long interval;
+
+  /**
+   * How far the arrival time may be ahead of the clock, defined by the capacity.
+   */
+  private final long tolerance;
+  private final AtomicLong arrival;
+
+  /**
+   * Creates a full bucket.
+   *
+   * @param interval nanoseconds to refill a token
+   * @param capacity count of tokens which can be taken at once
+   * @param now current {@link System#nanoTime()}
+   */
+  TokenBucket(long interval, int capacity, long now) {
+    this.interval = interval;
+    this.tolerance = interval * (capacity - 1);
+    this.arrival = new AtomicLong(now);
+  }
+
+  /**
+   * Returns nanoseconds until a token is available, without taking it.
+   */
+  long delay(long now) {
+    return Math.max(0, arrival.get() - tolerance - now);
+  }
+
+  /**
+   * Takes a token if it is available.
+   *
+   * @return 0 if the token is taken, otherwise nanoseconds until it is available
+   */
+  long tryAcquire(long now) {
+    while (true) {
+      long current = arrival.get();
+      long next = Math.max(current, now);
+      long wait = next - tolerance - now;
+      if (wait > 0) {
+        return wait;
+      }
+      if (arrival.compareAndSet(current, next + interval)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Forbids taking tokens until the given time, for example when the server asks to retry later.
+   */
+  void pause(long until) {
+    arrival.accumulateAndGet(until + tolerance, Math::max);
+  }
+
+  /**
+   * Checks if the bucket is full, so it can be replaced by a new one.
+   */
+  boolean isFull(long now) {
+    return arrival.get() <= now;
+  }
+}
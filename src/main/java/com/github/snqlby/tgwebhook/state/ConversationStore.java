@@ -0,0 +1,42 @@
+package com.github.snqlby.tgwebhook.state;
+
+/**
+ * Keeps the conversation state of every user in a chat. The state selects handler methods which
+ * declare it, for example the step of a form.
+ *
+ * <p>Methods are called concurrently from threads which process updates, so implementations
+ * must be thread-safe. The resolver reads a state only if its space has methods with a state.</p>
+ *
+ * <pre>{@code
+ * @MessageMethod(state = "ask_name")
+ * public BotApiMethod onName(AbsSender bot, Message message) {
+ *   conversations.setState(message.getChatId(), message.getFrom().getId(), "ask_age");
+ *   ...
+ * }
+ * }</pre>
+ *
+ * @see InMemoryConversationStore
+ */
+public interface ConversationStore {
+
+  /**
+   * Returns the state of a user in a chat. A private chat has the id of its user.
+   *
+   * @return null if the user has no conversation
+   */
+  String getState(long chatId, long userId);
+
+  /**
+   * Changes the state of a user in a chat.
+   *
+   * @param state new state, null to end the conversation
+   */
+  void setState(long chatId, long userId, String state);
+
+  /**
+   * Ends the conversation of a user in a chat.
+   */
+  default void removeState(long chatId, long userId) {
+    setState(chatId, userId, null);
+  }
+}
@@ -0,0 +1,338 @@
+package com.github.snqlby.tgwebhook.state;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps conversation states in memory. A state expires when it is neither read nor changed for
+ * the time to live, and the count of states is limited.
+ *
+ * <p>States are split into segments by chat and user, every segment is an open-addressing table
+ * of primitive arrays: chat ids, user ids, state ids and expiration times. State names are stored
+ * once, so a conversation takes about 24 bytes and no objects. Expired states are removed on
+ * access and by periodic sweeps. When a segment is full, the least recently used of several
+ * sampled states is evicted.</p>
+ *
+ * <p>State names are interned for the lifetime of the store, so they should be a fixed set of
+ * steps rather than values which contain user data.</p>
+ */
+public class InMemoryConversationStore implements ConversationStore {
+
+  public static final int DEFAULT_MAX_SIZE = 1 << 20;
+  public static final long DEFAULT_TTL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+  private static final int MAX_SEGMENTS = 16;
+  private static final int MAX_STATES = 1 << 16;
+  private static final int NO_STATE = 0;
+
+  private final Segment[] segments;
+  private final int ttl;
+  private final long origin = System.nanoTime();
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private volatile String[] names = new String[0];
+  private final LongAdder evicted = new LongAdder();
+
+  public InMemoryConversationStore() {
+    this(DEFAULT_TTL_SECONDS, TimeUnit.SECONDS, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates a store.
+   *
+   * @param ttl time to keep a state after it is read or changed, at least a second
+   * @param maxSize maximal count of states, it is divided between segments, so states may be
+   *     evicted slightly before the count is reached
+   */
+  public InMemoryConversationStore(long ttl, TimeUnit unit, int maxSize) {
+    long seconds = unit.toSeconds(ttl);
+    if (seconds < 1 || seconds > Integer.MAX_VALUE / 2 || maxSize < 1) {
+      throw new IllegalArgumentException("Time to live must be at least a second and size must "
+          + "be positive");
+    }
+    this.ttl = (int) seconds;
+    int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+    this.segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      segments[i] = new Segment((maxSize + count - 1) / count);
+    }
+  }
+
+  @Override
+  public String getState(long chatId, long userId) {
+    long hash = hash(chatId, userId);
+    int id = segment(hash).get(hash, chatId, userId, now(), ttl);
+    return id == NO_STATE ? null : names[id - 1];
+  }
+
+  @Override
+  public void setState(long chatId, long userId, String state) {
+    long hash = hash(chatId, userId);
+    if (state == null) {
+      segment(hash).remove(hash, chatId, userId);
+    } else if (segment(hash).put(hash, chatId, userId, findId(state), now(), ttl)) {
+      evicted.increment();
+    }
+  }
+
+  /**
+   * Returns the count of stored states, including expired states which are not removed yet.
+   */
+  public int getSize() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.getSize();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the count of states which were evicted before expiration to free space.
+   */
+  public long getEvictedCount() {
+    return evicted.sum();
+  }
+
+  private Segment segment(long hash) {
+    return segments[(int) hash & (segments.length - 1)];
+  }
+
+  /**
+   * Returns seconds since the creation of the store.
+   */
+  private int now() {
+    return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - origin);
+  }
+
+  private int findId(String state) {
+    Integer id = ids.get(state);
+    if (id != null) {
+      return id;
+    }
+    synchronized (ids) {
+      id = ids.get(state);
+      if (id == null) {
+        if (names.length == MAX_STATES) {
+          throw new IllegalStateException("Too many distinct states: " + MAX_STATES);
+        }
+        String[] next = Arrays.copyOf(names, names.length + 1);
+        next[names.length] = state;
+        names = next;
+        id = next.length;
+        ids.put(state, id);
+      }
+      return id;
+    }
+  }
+
+  private static long hash(long chatId, long userId) {
+    long hash = (chatId * 0x9E3779B97F4A7C15L + userId) * 0xBF58476D1CE4E5B9L;
+    return hash ^ (hash >>> 31);
+  }
+
+  private static final class Segment {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int SWEEP_INTERVAL = 10;
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final int maxSize;
+    private final int maxCapacity;
+    private long[] chats;
+    private long[] users;
+    private int[] states;
+    private int[] expirations;
+    private int shift;
+    private int size;
+    private int lastSweep;
+    private int cursor;
+
+    private Segment(int maxSize) {
+      this.maxSize = maxSize;
+      // The load factor of the table is at most 0.75
+      this.maxCapacity = Math.max(INITIAL_CAPACITY,
+          Integer.highestOneBit((int) Math.min((maxSize * 4L + 2) / 3, 1 << 30) - 1) << 1);
+      allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+    }
+
+    private void allocate(int capacity) {
+      chats = new long[capacity];
+      users = new long[capacity];
+      states = new int[capacity];
+      expirations = new int[capacity];
+      shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int slot(long hash) {
+      return (int) (hash >>> shift);
+    }
+
+    private int find(long hash, long chatId, long userId) {
+      int mask = states.length - 1;
+      int index = slot(hash);
+      while (states[index] != NO_STATE) {
+        if (chats[index] == chatId && users[index] == userId) {
+          return index;
+        }
+        index = (index + 1) & mask;
+      }
+      return -1;
+    }
+
+    private synchronized int get(long hash, long chatId, long userId, int now, int ttl) {
+      int index = find(hash, chatId, userId);
+      if (index < 0) {
+        return NO_STATE;
+      }
+      if (expirations[index] - now <= 0) {
+        delete(index);
+        return NO_STATE;
+      }
+      expirations[index] = now + ttl;
+      return states[index];
+    }
+
+    /**
+     * Stores a state.
+     *
+     * @return true if another state was evicted to free space
+     */
+    private synchronized boolean put(long hash, long chatId, long userId, int state, int now,
+        int ttl) {
+      int index = find(hash, chatId, userId);
+      if (index >= 0) {
+        states[index] = state;
+        expirations[index] = now + ttl;
+        return false;
+      }
+
+      if (now - lastSweep >= SWEEP_INTERVAL) {
+        sweep(now);
+      }
+      boolean evicted = false;
+      if (size >= maxSize) {
+        if (now != lastSweep) {
+          sweep(now);
+        }
+        if (size >= maxSize) {
+          evict();
+          evicted = true;
+        }
+      }
+      if (size >= states.length - (states.length >> 2) && states.length < maxCapacity) {
+        resize(states.length << 1);
+      }
+
+      int mask = states.length - 1;
+      index = slot(hash);
+      while (states[index] != NO_STATE) {
+        index = (index + 1) & mask;
+      }
+      chats[index] = chatId;
+      users[index] = userId;
+      states[index] = state;
+      expirations[index] = now + ttl;
+      size++;
+      return evicted;
+    }
+
+    private synchronized void remove(long hash, long chatId, long userId) {
+      int index = find(hash, chatId, userId);
+      if (index >= 0) {
+        delete(index);
+      }
+    }
+
+    private synchronized int getSize() {
+      return size;
+    }
+
+    private void resize(int capacity) {
+      long[] oldChats = chats;
+      long[] oldUsers = users;
+      int[] oldStates = states;
+      int[] oldExpirations = expirations;
+      allocate(capacity);
+      int mask = capacity - 1;
+      for (int i = 0; i < oldStates.length; i++) {
+        if (oldStates[i] != NO_STATE) {
+          int index = slot(hash(oldChats[i], oldUsers[i]));
+          while (states[index] != NO_STATE) {
+            index = (index + 1) & mask;
+          }
+          chats[index] = oldChats[i];
+          users[index] = oldUsers[i];
+          states[index] = oldStates[i];
+          expirations[index] = oldExpirations[i];
+        }
+      }
+    }
+
+    /**
+     * Removes expired states.
+     */
+    private void sweep(int now) {
+      lastSweep = now;
+      int index = 0;
+      while (index < states.length) {
+        if (states[index] != NO_STATE && expirations[index] - now <= 0) {
+          // Deletion may shift the next state into this slot, so it is checked again
+          delete(index);
+        } else {
+          index++;
+        }
+      }
+    }
+
+    /**
+     * Removes the state which expires first among several states after the cursor. Expiration
+     * is extended on every access, so it is the least recently used one.
+     */
+    private void evict() {
+      int mask = states.length - 1;
+      int victim = -1;
+      int samples = 0;
+      for (int i = 0; i < states.length && samples < EVICTION_SAMPLES; i++) {
+        int index = (cursor + i) & mask;
+        if (states[index] != NO_STATE) {
+          if (victim < 0 || expirations[index] - expirations[victim] < 0) {
+            victim = index;
+          }
+          samples++;
+        }
+      }
+      cursor = (cursor + EVICTION_SAMPLES) & mask;
+      delete(victim);
+    }
+
+    /**
+     * Removes a state with backward shifting, so the table never contains tombstones.
+     */
+    private void delete(int index) {
+      int mask = states.length - 1;
+      int free = index;
+      int next = index;
+      while (true) {
+        next = (next + 1) & mask;
+        if (states[next] == NO_STATE) {
+          break;
+        }
+        int home = slot(hash(chats[next], users[next]));
+        // Move the entry if its home slot is not between the free slot and its position
+        boolean stays = free <= next ? free < home && home <= next
+            : free < home || home <= next;
+        if (!stays) {
+          chats[free] = chats[next];
+          users[free] = users[next];
+          states[free] = states[next];
+          expirations[free] = expirations[next];
+          free = next;
+        }
+      }
+      states[free] = NO_STATE;
+      size--;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.github.snqlby.tgwebhook.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public abstract class AsyncExecutors {
+
+  /**
+   * Returns the shared executor for asynchronous requests.
+   *
+   * <p>It starts a virtual thread per task if the runtime supports them (Java 21+), otherwise it
+   * uses a cached pool of daemon threads.</p>
+   */
+  public static Executor defaultExecutor() {
+    return Holder.EXECUTOR;
+  }
+
+  /**
+   * Returns the shared scheduler for delayed tasks, for example flushing of buffered media groups.
+   *
+   * <p>It has a single daemon thread, so tasks must be short and pass work to an executor.</p>
+   */
+  public static ScheduledExecutorService scheduler() {
+    return SchedulerHolder.SCHEDULER;
+  }
+
+  private static ScheduledExecutorService createScheduler() {
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, task -> {
+      Thread thread = new Thread(task, "tgwebhook-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+
+  private static ExecutorService createExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException ignored) {
+      // Virtual threads are not supported, use platform threads
+    }
+
+    AtomicInteger counter = new AtomicInteger();
+    ThreadFactory factory = task -> {
+      Thread thread = new Thread(task, "tgwebhook-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    return Executors.newCachedThreadPool(factory);
+  }
+
+  private static class Holder {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+  }
+
+  private static class SchedulerHolder {
+
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.snqlby.tgwebhook;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.snqlby.tgwebhook.methods.CommandMethod;
+import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+public class HandlerClassTest {
+
+  @Test
+  public void usesGeneratedRoutes() {
+    int loaded = HandlerClassTest_Parent_TgRoutes.LOADED.get();
+
+    assertEquals(1, HandlerClass.of(Parent.class).getMethods().size());
+    assertEquals(loaded + 1, HandlerClassTest_Parent_TgRoutes.LOADED.get());
+  }
+
+  @Test
+  public void usesRoutesOfSuperclassForSubclassWithoutAnnotatedMethods() {
+    int loaded = HandlerClassTest_Parent_TgRoutes.LOADED.get();
+
+    assertEquals(1, HandlerClass.of(Proxy.class).getMethods().size());
+    assertEquals(loaded + 1, HandlerClassTest_Parent_TgRoutes.LOADED.get());
+  }
+
+  @Test
+  public void scansSubclassWithAnnotatedMethods() {
+    int loaded = HandlerClassTest_Parent_TgRoutes.LOADED.get();
+
+    List<MethodMetadata> methods = HandlerClass.of(Child.class).getMethods();
+    assertEquals(2, methods.size());
+    assertEquals(loaded, HandlerClassTest_Parent_TgRoutes.LOADED.get());
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class Parent {
+
+    @MessageMethod
+    public BotApiMethod onMessage(AbsSender bot, Message message) {
+      return null;
+    }
+  }
+
+  /**
+   * Overrides a method without annotations, like a proxy of a framework.
+   */
+  public static class Proxy extends Parent {
+
+    @Override
+    public BotApiMethod onMessage(AbsSender bot, Message message) {
+      return super.onMessage(bot, message);
+    }
+  }
+
+  public static class Child extends Parent {
+
+    @CommandMethod(command = "/start")
+    public BotApiMethod onStart(AbsSender bot, Message message, List<String> args) {
+      return null;
+    }
+  }
+}
+
+/**
+ * Routes of {@link HandlerClassTest.Parent} as tgwebhook-processor generates them, they are found
+ * by the name.
+ */
+class HandlerClassTest_Parent_TgRoutes implements GeneratedRoutes {
+
+  static final AtomicInteger LOADED = new AtomicInteger();
+
+  public HandlerClassTest_Parent_TgRoutes() {
+  }
+
+  @Override
+  public Method[] methods() throws NoSuchMethodException {
+    LOADED.incrementAndGet();
+    return new Method[] {
+        HandlerClassTest.Parent.class.getMethod("onMessage", AbsSender.class, Message.class)};
+  }
+
+  @Override
+  public Object invoke(int index, Object handler, Object arg0, Object arg1, Object arg2,
+      Object arg3) {
+    return ((HandlerClassTest.Parent) handler).onMessage((AbsSender) arg0, (Message) arg1);
+  }
+}
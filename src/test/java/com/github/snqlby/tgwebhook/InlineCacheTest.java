@@ -0,0 +1,85 @@
+package com.github.snqlby.tgwebhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+
+public class InlineCacheTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final InlineCache cache = new InlineCache(1, TimeUnit.HOURS, 16, false);
+  private final AtomicInteger loads = new AtomicInteger();
+  private final AtomicInteger reloads = new AtomicInteger();
+  private final Executor executor = task -> {
+    reloads.incrementAndGet();
+    task.run();
+  };
+
+  @Test
+  public void returnsCachedAnswerWithQueryId() throws Exception {
+    Object first = cache.get(query("1", 100, "Cats "), null, executor, () -> answer("1"));
+    Object second = cache.get(query("2", 200, "cats"), null, executor, () -> answer("2"));
+
+    assertEquals("1", ((AnswerInlineQuery) first).getInlineQueryId());
+    assertEquals("2", join(second).getInlineQueryId());
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void doesNotCacheAnswerOfSupersededQuery() throws Exception {
+    CancellationToken token = new CancellationToken();
+    token.cancel();
+    // A cooperative handler returns an empty answer when its query is superseded
+    assertNull(cache.get(query("1", 100, "cats"), token, executor, () -> null));
+
+    Object answer = cache.get(query("2", 200, "cats"), null, executor, () -> answer("2"));
+    assertEquals("2", ((AnswerInlineQuery) answer).getInlineQueryId());
+    assertEquals(1, loads.get());
+    assertEquals(0, cache.getHitCount());
+  }
+
+  @Test
+  public void reloadsWaitingQueryWhenLoadIsSuperseded() throws Exception {
+    CancellationToken token = new CancellationToken();
+    CompletableFuture<BotApiMethod> running = new CompletableFuture<>();
+    cache.get(query("1", 100, "cats"), token, executor, () -> running);
+    Object waiting = cache.get(query("2", 200, "cats"), null, executor, () -> answer("2"));
+
+    token.cancel();
+    running.complete(null);
+    assertEquals("2", join(waiting).getInlineQueryId());
+    assertEquals(1, loads.get());
+    // The query is loaded again on the given executor
+    assertEquals(1, reloads.get());
+  }
+
+  private AnswerInlineQuery answer(String queryId) {
+    loads.incrementAndGet();
+    return new AnswerInlineQuery().setInlineQueryId(queryId);
+  }
+
+  private static AnswerInlineQuery join(Object result) {
+    assertTrue(result instanceof CompletionStage);
+    return (AnswerInlineQuery) ((CompletionStage<?>) result).toCompletableFuture().join();
+  }
+
+  private static InlineQuery query(String id, int userId, String text) throws IOException {
+    return MAPPER.readValue("{\"id\":\"" + id + "\",\"from\":{\"id\":" + userId
+        + ",\"first_name\":\"User\",\"is_bot\":false},\"query\":\"" + text
+        + "\",\"offset\":\"\"}", InlineQuery.class);
+  }
+}
@@ -0,0 +1,119 @@
+package com.github.snqlby.tgwebhook;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.snqlby.tgwebhook.methods.MessageMethod;
+import com.github.snqlby.tgwebhook.methods.Observe;
+import com.github.snqlby.tgwebhook.methods.TextMethod;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.bots.TelegramWebhookBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+public class RequestResolverTest {
+
+  private static final String SPACE = "request-resolver-test";
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final List<String> observed = new CopyOnWriteArrayList<>();
+  private RequestResolver resolver;
+
+  @Before
+  public void setUp() {
+    Handlers.addHandler(SPACE, new TextHandler());
+    Handlers.addHandler(SPACE, new ObserverHandler(observed));
+    // Observers run on the calling thread, so they are done when the answer is returned
+    resolver = RequestResolver.builder(SPACE, new Bot()).setExecutor(Runnable::run).build();
+  }
+
+  @After
+  public void tearDown() {
+    Handlers.clearHandlers(SPACE);
+  }
+
+  @Test
+  public void observesMessageAnsweredByTextMethod() throws IOException {
+    BotApiMethod answer = resolver.handleRequest(message("buy spam"));
+
+    assertEquals("text", ((SendMessage) answer).getText());
+    assertEquals(1, observed.size());
+    assertEquals("buy spam", observed.get(0));
+  }
+
+  @Test
+  public void passesMessageWithoutTriggersToMessageMethod() throws IOException {
+    BotApiMethod answer = resolver.handleRequest(message("hello"));
+
+    assertEquals("message", ((SendMessage) answer).getText());
+    assertEquals(1, observed.size());
+  }
+
+  private static Update message(String text) throws IOException {
+    return MAPPER.readValue("{\"update_id\":1,\"message\":{\"message_id\":1,\"date\":1,"
+        + "\"from\":{\"id\":100,\"first_name\":\"User\",\"is_bot\":false},"
+        + "\"chat\":{\"id\":100,\"type\":\"private\"},\"text\":\"" + text + "\"}}", Update.class);
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class TextHandler {
+
+    @TextMethod(keyword = "spam")
+    public BotApiMethod onSpam(AbsSender bot, Message message, TextMatches matches) {
+      return new SendMessage(message.getChatId(), "text");
+    }
+
+    @MessageMethod
+    public BotApiMethod onMessage(AbsSender bot, Message message) {
+      return new SendMessage(message.getChatId(), "message");
+    }
+  }
+
+  @Observe
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class ObserverHandler {
+
+    private final List<String> observed;
+
+    ObserverHandler(List<String> observed) {
+      this.observed = observed;
+    }
+
+    @MessageMethod
+    public BotApiMethod onMessage(AbsSender bot, Message message) {
+      observed.add(message.getText());
+      return null;
+    }
+  }
+
+  private static class Bot extends TelegramWebhookBot {
+
+    @Override
+    public BotApiMethod onWebhookUpdateReceived(Update update) {
+      return null;
+    }
+
+    @Override
+    public String getBotUsername() {
+      return "test_bot";
+    }
+
+    @Override
+    public String getBotToken() {
+      return "";
+    }
+
+    @Override
+    public String getBotPath() {
+      return SPACE;
+    }
+  }
+}
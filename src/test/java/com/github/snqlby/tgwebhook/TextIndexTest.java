@@ -0,0 +1,152 @@
+package com.github.snqlby.tgwebhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.snqlby.tgwebhook.methods.TextMethod;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+public class TextIndexTest {
+
+  private static final String SPACE = "text-index-test";
+
+  private TextIndex index;
+
+  @Before
+  public void setUp() {
+    Handlers.addHandler(SPACE, new TextHandler());
+    index = Handlers.getDispatchTable(SPACE).getTexts();
+  }
+
+  @After
+  public void tearDown() {
+    Handlers.clearHandlers(SPACE);
+  }
+
+  @Test
+  public void findsLiterals() {
+    assertEquals("hello", TextIndex.findLiteral("hello"));
+    assertEquals("http", TextIndex.findLiteral("https?://\\S+"));
+    assertEquals("t.me/", TextIndex.findLiteral("t\\.me/\\w+"));
+    assertEquals("abcd", TextIndex.findLiteral("ab+cd[0-9]abcd"));
+    assertEquals("hell", TextIndex.findLiteral("^hello?$"));
+  }
+
+  @Test
+  public void findsNoLiteral() {
+    assertNull(TextIndex.findLiteral("cat|dog"));
+    assertNull(TextIndex.findLiteral("(?i)hello"));
+    assertNull(TextIndex.findLiteral("\\Qhello\\E"));
+    assertNull(TextIndex.findLiteral("a.b.c"));
+    assertNull(TextIndex.findLiteral("[hello]+"));
+  }
+
+  @Test
+  public void dropsQuantifiedCodePoint() {
+    assertNull(TextIndex.findLiteral("a\uD83D\uDE00?b"));
+    assertEquals("ab", TextIndex.findLiteral("ab\uD83D\uDE00*c"));
+    assertEquals("a\uD83D\uDE00", TextIndex.findLiteral("a\uD83D\uDE00b?"));
+  }
+
+  @Test
+  public void matchesKeywordsAsWholeWords() {
+    assertEquals(singletonList("onSpam"), names(index.find("Buy SPAM now")));
+    assertTrue(index.find("spammer").isEmpty());
+    assertEquals(singletonList("onSpam"), names(index.find("c++ rocks")));
+  }
+
+  @Test
+  public void matchesPhrasesAnywhere() {
+    List<TextMatches> found = index.find("join t.me/group");
+    assertEquals(singletonList("onLink"), names(found));
+    TextMatch match = found.get(0).getMatches().get(0);
+    assertEquals(5, match.getStart());
+    assertEquals(10, match.getEnd());
+    assertEquals("t.me/", match.getValue());
+  }
+
+  @Test
+  public void evaluatesFilteredPatterns() {
+    List<TextMatches> found = index.find("order #123 and order #45");
+    assertEquals(singletonList("onOrder"), names(found));
+    assertEquals(2, found.get(0).getMatches().size());
+    assertEquals("order #45", found.get(0).getMatches().get(1).getValue());
+    assertTrue(index.find("order #x").isEmpty());
+  }
+
+  @Test
+  public void findsEveryMatchedMethod() {
+    List<TextMatches> found = index.find("spam at t.me/spam, order #1");
+    assertEquals(3, found.size());
+  }
+
+  @Test
+  public void prefiltersWithAutomaton() {
+    assertTrue(index.mayMatch("SPAM"));
+    assertTrue(index.mayMatch("order #x"));
+    // Whole words are not checked by the prefilter
+    assertTrue(index.mayMatch("spammer"));
+    assertFalse(index.mayMatch("hello world"));
+    assertFalse(index.mayMatch(null));
+  }
+
+  @Test
+  public void acceptsEveryTextWithUnfilteredPattern() {
+    Handlers.addHandler(SPACE, new AlternativeHandler());
+    TextIndex alternatives = Handlers.getDispatchTable(SPACE).getTexts();
+
+    assertTrue(alternatives.mayMatch("hello world"));
+    assertEquals(singletonList("onPet"), names(alternatives.find("a dog")));
+  }
+
+  private static List<String> singletonList(String value) {
+    List<String> list = new ArrayList<>();
+    list.add(value);
+    return list;
+  }
+
+  private static List<String> names(List<TextMatches> found) {
+    List<String> names = new ArrayList<>();
+    for (TextMatches matches : found) {
+      names.add(matches.getMethod().getMethod().getName());
+    }
+    return names;
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class TextHandler {
+
+    @TextMethod(keyword = {"spam", "c++"})
+    public BotApiMethod onSpam(AbsSender bot, Message message, TextMatches matches) {
+      return null;
+    }
+
+    @TextMethod(phrase = "t.me/")
+    public BotApiMethod onLink(AbsSender bot, Message message, TextMatches matches) {
+      return null;
+    }
+
+    @TextMethod(regex = "order #\\d+")
+    public BotApiMethod onOrder(AbsSender bot, Message message, TextMatches matches) {
+      return null;
+    }
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class AlternativeHandler {
+
+    @TextMethod(regex = "cat|dog")
+    public BotApiMethod onPet(AbsSender bot, Message message, TextMatches matches) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.github.snqlby.tgwebhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import org.junit.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+public class UpdateDeduplicatorTest {
+
+  @Test
+  public void suppressesDuplicates() {
+    UpdateDeduplicator deduplicator = new UpdateDeduplicator(16);
+
+    assertTrue(deduplicator.accept(1));
+    assertTrue(deduplicator.accept(2));
+    assertFalse(deduplicator.accept(1));
+    assertFalse(deduplicator.accept(2));
+    assertEquals(2, deduplicator.getSuppressedCount());
+  }
+
+  @Test
+  public void forgetsOldestId() {
+    UpdateDeduplicator deduplicator = new UpdateDeduplicator(2);
+
+    // A window of two is split into stripes of odd and even ids with a single id each
+    assertTrue(deduplicator.accept(1));
+    assertTrue(deduplicator.accept(3));
+    assertTrue(deduplicator.accept(1));
+    assertTrue(deduplicator.accept(2));
+    assertFalse(deduplicator.accept(1));
+    assertFalse(deduplicator.accept(2));
+  }
+
+  @Test
+  public void roundsWindowToStripes() {
+    assertEquals(32, new UpdateDeduplicator(20).getWindow());
+    assertEquals(1, new UpdateDeduplicator(1).getWindow());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyWindow() {
+    new UpdateDeduplicator(0);
+  }
+
+  @Test
+  public void acceptsUpdateWithoutId() {
+    UpdateDeduplicator deduplicator = new UpdateDeduplicator();
+
+    assertTrue(deduplicator.accept(new Update()));
+    assertTrue(deduplicator.accept(new Update()));
+    assertTrue(deduplicator.accept(Integer.MIN_VALUE));
+    assertTrue(deduplicator.accept(Integer.MIN_VALUE));
+  }
+
+  @Test
+  public void matchesRingOfRecentIds() {
+    // Random ids in a small range collide in the set, so removals shift entries back, also
+    // across the end of the table
+    int window = 64;
+    UpdateDeduplicator deduplicator = new UpdateDeduplicator(window);
+    int stripes = 16;
+    @SuppressWarnings("unchecked")
+    Deque<Integer>[] recent = new Deque[stripes];
+    for (int i = 0; i < stripes; i++) {
+      recent[i] = new ArrayDeque<>();
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      int id = random.nextInt(512) - 256;
+      Deque<Integer> stripe = recent[id & (stripes - 1)];
+      boolean expected = !stripe.contains(id);
+      if (expected) {
+        if (stripe.size() == window / stripes) {
+          stripe.removeFirst();
+        }
+        stripe.addLast(id);
+      }
+      assertEquals("id " + id + " at " + i, expected, deduplicator.accept(id));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.github.snqlby.tgwebhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.telegram.telegrambots.bots.TelegramWebhookBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+public class UpdateReaderTest {
+
+  private static final String SPACE = "update-reader-test";
+  private static final byte[] MESSAGE = ("{\"update_id\":1,\"message\":{\"message_id\":1,"
+      + "\"date\":1,\"from\":{\"id\":100,\"first_name\":\"User\",\"is_bot\":false},"
+      + "\"chat\":{\"id\":100,\"type\":\"private\"},\"text\":\"hello\"}}")
+      .getBytes(StandardCharsets.UTF_8);
+
+  private final UpdateReader reader = new UpdateReader(SPACE);
+
+  @After
+  public void tearDown() {
+    Handlers.clearHandlers(SPACE);
+  }
+
+  @Test
+  public void skipsUpdateWithoutHandler() throws IOException {
+    assertNull(reader.read(MESSAGE));
+  }
+
+  @Test
+  public void readsInterceptedUpdateWithoutHandler() throws IOException {
+    AnsweringInterceptor interceptor = new AnsweringInterceptor();
+    Handlers.addInterceptor(SPACE, interceptor);
+
+    Update update = reader.read(MESSAGE);
+    assertNotNull(update);
+    BotApiMethod answer = new RequestResolver(SPACE, new Bot()).handleRequest(update);
+    assertEquals(1, interceptor.calls.get());
+    assertEquals("intercepted", ((SendMessage) answer).getText());
+  }
+
+  @Test
+  public void skipsUpdateOfOtherInterceptedType() throws IOException {
+    Handlers.addInterceptor(SPACE, new CallbackInterceptor());
+
+    assertNull(reader.read(MESSAGE));
+  }
+
+  private static class AnsweringInterceptor implements UpdateInterceptor {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public BotApiMethod after(AbsSender bot, Update update, UpdateType type,
+        BotApiMethod result) {
+      calls.incrementAndGet();
+      return new SendMessage(update.getMessage().getChatId(), "intercepted");
+    }
+  }
+
+  @AcceptTypes({UpdateType.CALLBACK_QUERY})
+  private static class CallbackInterceptor implements UpdateInterceptor {
+  }
+
+  private static class Bot extends TelegramWebhookBot {
+
+    @Override
+    public BotApiMethod onWebhookUpdateReceived(Update update) {
+      return null;
+    }
+
+    @Override
+    public String getBotUsername() {
+      return "test_bot";
+    }
+
+    @Override
+    public String getBotToken() {
+      return "";
+    }
+
+    @Override
+    public String getBotPath() {
+      return SPACE;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.github.snqlby.tgwebhook.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+public class FloodControlTest {
+
+  private static final String MESSAGE = "{\"ok\":true,\"result\":{\"message_id\":1,\"date\":0,"
+      + "\"chat\":{\"id\":1,\"type\":\"private\"}}}";
+  private static final String TOO_MANY_REQUESTS = "{\"ok\":false,\"error_code\":429,"
+      + "\"description\":\"Too Many Requests\",\"parameters\":{\"retry_after\":1}}";
+
+  private final List<Long> arrivals = new CopyOnWriteArrayList<>();
+  private final AtomicInteger rejections = new AtomicInteger();
+  private HttpServer server;
+  private FloodControl control;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", this::answer);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+
+    DefaultBotOptions options = new DefaultBotOptions();
+    options.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/bot");
+    DefaultAbsSender bot = new DefaultAbsSender(options) {
+      @Override
+      public String getBotToken() {
+        return "token";
+      }
+    };
+    control = new FloodControl(bot, 30, 1, 20, Executors.newCachedThreadPool());
+  }
+
+  @After
+  public void tearDown() {
+    control.close();
+    server.stop(0);
+  }
+
+  private void answer(HttpExchange exchange) throws IOException {
+    arrivals.add(System.nanoTime());
+    String body = rejections.getAndDecrement() > 0 ? TOO_MANY_REQUESTS : MESSAGE;
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  @Test
+  public void sendsToChatWithinChatRate() throws Exception {
+    CompletableFuture<Message> first = control.submit(message("1"));
+    CompletableFuture<Message> second = control.submit(message("1"));
+
+    assertEquals(Integer.valueOf(1), first.get(10, TimeUnit.SECONDS).getMessageId());
+    second.get(10, TimeUnit.SECONDS);
+    assertEquals(2, arrivals.size());
+    assertTrue(arrivals.get(1) - arrivals.get(0) >= TimeUnit.MILLISECONDS.toNanos(900));
+  }
+
+  @Test
+  public void doesNotHoldOtherChats() throws Exception {
+    CompletableFuture<Message> first = control.submit(message("1"));
+    CompletableFuture<Message> delayed = control.submit(message("1"));
+    CompletableFuture<Message> other = control.submit(message("2"));
+
+    first.get(10, TimeUnit.SECONDS);
+    other.get(10, TimeUnit.SECONDS);
+    assertFalse(delayed.isDone());
+    delayed.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void retriesTooManyRequests() throws Exception {
+    rejections.set(1);
+    long start = System.nanoTime();
+
+    control.submit(message("1")).get(10, TimeUnit.SECONDS);
+    assertEquals(2, arrivals.size());
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+  }
+
+  private static SendMessage message(String chatId) {
+    return new SendMessage(chatId, "text");
+  }
+}
@@ -0,0 +1,111 @@
+package com.github.snqlby.tgwebhook.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class InMemoryConversationStoreTest {
+
+  @Test
+  public void storesAndRemovesStates() {
+    InMemoryConversationStore store = new InMemoryConversationStore();
+
+    assertNull(store.getState(1, 2));
+    store.setState(1, 2, "ask_name");
+    store.setState(1, 3, "ask_age");
+    assertEquals("ask_name", store.getState(1, 2));
+    assertEquals("ask_age", store.getState(1, 3));
+    assertNull(store.getState(2, 1));
+
+    store.setState(1, 2, "ask_age");
+    assertEquals("ask_age", store.getState(1, 2));
+    store.removeState(1, 2);
+    assertNull(store.getState(1, 2));
+    assertEquals(1, store.getSize());
+  }
+
+  @Test
+  public void matchesMapOfStates() {
+    // Ids in a small range collide in the tables, so deletions shift states back, also across
+    // the end of a table, and tables are resized
+    InMemoryConversationStore store = new InMemoryConversationStore();
+    Map<String, String> expected = new HashMap<>();
+    String[] states = {"a", "b", "c"};
+
+    Random random = new Random(42);
+    for (int i = 0; i < 200_000; i++) {
+      long chatId = random.nextInt(64) - 32;
+      long userId = random.nextInt(64);
+      String key = chatId + ":" + userId;
+      if (random.nextInt(3) == 0) {
+        store.removeState(chatId, userId);
+        expected.remove(key);
+      } else if (random.nextBoolean()) {
+        String state = states[random.nextInt(states.length)];
+        store.setState(chatId, userId, state);
+        expected.put(key, state);
+      } else {
+        assertEquals(key + " at " + i, expected.get(key), store.getState(chatId, userId));
+      }
+    }
+    assertEquals(expected.size(), store.getSize());
+    assertEquals(0, store.getEvictedCount());
+  }
+
+  @Test
+  public void evictsWhenFull() {
+    InMemoryConversationStore store = new InMemoryConversationStore(1, TimeUnit.HOURS, 1);
+
+    store.setState(1, 1, "a");
+    store.setState(2, 2, "b");
+    assertNull(store.getState(1, 1));
+    assertEquals("b", store.getState(2, 2));
+    assertEquals(1, store.getSize());
+    assertEquals(1, store.getEvictedCount());
+  }
+
+  @Test
+  public void limitsSize() {
+    InMemoryConversationStore store = new InMemoryConversationStore(1, TimeUnit.HOURS, 100);
+
+    for (int i = 0; i < 1000; i++) {
+      store.setState(i, i, "a");
+    }
+    // The size is divided between segments and rounded up in every one
+    assertTrue(store.getSize() <= 112);
+    assertEquals(1000 - store.getSize(), store.getEvictedCount());
+  }
+
+  @Test
+  public void expiresStates() throws InterruptedException {
+    InMemoryConversationStore store = new InMemoryConversationStore(1, TimeUnit.SECONDS, 1);
+
+    store.setState(1, 1, "a");
+    Thread.sleep(2100);
+    assertNull(store.getState(1, 1));
+    assertEquals(0, store.getSize());
+  }
+
+  @Test
+  public void sweepsExpiredStatesInsteadOfEviction() throws InterruptedException {
+    InMemoryConversationStore store = new InMemoryConversationStore(1, TimeUnit.SECONDS, 1);
+
+    store.setState(1, 1, "a");
+    Thread.sleep(2100);
+    store.setState(2, 2, "b");
+    assertEquals(1, store.getSize());
+    assertEquals(0, store.getEvictedCount());
+    assertEquals("b", store.getState(2, 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsShortTimeToLive() {
+    new InMemoryConversationStore(500, TimeUnit.MILLISECONDS, 1);
+  }
+}
@@ -0,0 +1,327 @@
+package com.github.snqlby.tgwebhook.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Generates {@code GeneratedRoutes} implementations for classes annotated with AcceptTypes.
+ *
+ * <p>A generated class lists annotated methods of a handler class and calls them directly, so the
+ * library neither scans the class with reflection nor uses MethodHandles for it.</p>
+ */
+@SupportedAnnotationTypes(RoutesProcessor.ACCEPT_TYPES)
+public class RoutesProcessor extends AbstractProcessor {
+
+  static final String ACCEPT_TYPES = "com.github.snqlby.tgwebhook.AcceptTypes";
+
+  private static final String GENERATED_ROUTES = "com.github.snqlby.tgwebhook.GeneratedRoutes";
+  private static final String COMMAND_ARGUMENTS = "com.github.snqlby.tgwebhook.CommandArguments";
+  private static final String SUFFIX = "_TgRoutes";
+  private static final int MAX_ARGUMENTS = 4;
+  private static final String METHODS_PACKAGE = "com.github.snqlby.tgwebhook.methods.";
+  private static final Set<String> METHOD_ANNOTATIONS = new HashSet<>(Arrays.asList(
+      "CallbackMethod", "ChannelPostMethod", "ChosenInlineMethod", "CommandMethod",
+      "EditedChannelPostMethod", "EditedMessageMethod", "InlineMethod", "JoinMethod",
+      "LeaveMethod", "MessageMethod", "PreCheckoutMethod", "ShippingMethod", "TextMethod"));
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    TypeElement acceptTypes = processingEnv.getElementUtils().getTypeElement(ACCEPT_TYPES);
+    if (acceptTypes == null) {
+      return false;
+    }
+
+    for (TypeElement type : ElementFilter
+        .typesIn(roundEnv.getElementsAnnotatedWith(acceptTypes))) {
+      if (type.getKind() != ElementKind.CLASS) {
+        continue;
+      }
+      if (!isAccessible(type)) {
+        processingEnv.getMessager().printMessage(Kind.WARNING,
+            "Routes are not generated for an inaccessible class, reflection will be used", type);
+        continue;
+      }
+
+      List<ExecutableElement> methods = findMethods(type);
+      if (methods != null) {
+        generate(type, methods);
+      }
+    }
+    return false;
+  }
+
+  private boolean isAccessible(TypeElement type) {
+    for (Element element = type; element.getKind().isClass();
+        element = element.getEnclosingElement()) {
+      TypeElement current = (TypeElement) element;
+      if (current.getModifiers().contains(Modifier.PRIVATE)) {
+        return false;
+      }
+      if (current.getNestingKind() == NestingKind.TOP_LEVEL) {
+        return true;
+      }
+      if (current.getNestingKind() != NestingKind.MEMBER
+          || !current.getModifiers().contains(Modifier.STATIC)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Collects public methods with Method-like annotations, including inherited ones.
+   *
+   * @return null if the class contains an unsupported method
+   */
+  private List<ExecutableElement> findMethods(TypeElement type) {
+    List<ExecutableElement> result = new ArrayList<>();
+    boolean valid = true;
+    for (ExecutableElement method : ElementFilter
+        .methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+      if (!method.getModifiers().contains(Modifier.PUBLIC)
+          || method.getModifiers().contains(Modifier.STATIC) || !isAnnotated(method)) {
+        continue;
+      }
+      if (isTypedCommand(method)) {
+        if (!hasSupportedArguments(method)) {
+          processingEnv.getMessager().printMessage(Kind.ERROR,
+              "Command arguments can be String, long, int, double or boolean", method);
+          valid = false;
+        }
+      } else if (method.getParameters().size() > MAX_ARGUMENTS) {
+        processingEnv.getMessager().printMessage(Kind.ERROR,
+            "Handler methods can't declare more than " + MAX_ARGUMENTS + " parameters", method);
+        valid = false;
+      } else if (!throwsOnlyExceptions(method)) {
+        processingEnv.getMessager().printMessage(Kind.ERROR,
+            "Handler methods can't declare Throwable", method);
+        valid = false;
+      }
+      result.add(method);
+    }
+    return valid ? result : null;
+  }
+
+  /**
+   * Checks the method and methods overridden by it in superclasses, the same way as the library
+   * does at runtime.
+   */
+  private boolean isAnnotated(ExecutableElement method) {
+    return isAnnotated(method, METHOD_ANNOTATIONS);
+  }
+
+  private boolean isAnnotated(ExecutableElement method, Set<String> names) {
+    if (hasMethodAnnotation(method, names)) {
+      return true;
+    }
+
+    TypeElement owner = (TypeElement) method.getEnclosingElement();
+    TypeMirror superclass = owner.getSuperclass();
+    while (superclass.getKind() == TypeKind.DECLARED) {
+      TypeElement superType = (TypeElement) ((DeclaredType) superclass).asElement();
+      for (ExecutableElement candidate : ElementFilter
+          .methodsIn(superType.getEnclosedElements())) {
+        if (processingEnv.getElementUtils().overrides(method, candidate, owner)
+            && hasMethodAnnotation(candidate, names)) {
+          return true;
+        }
+      }
+      superclass = superType.getSuperclass();
+    }
+    return false;
+  }
+
+  private boolean hasMethodAnnotation(ExecutableElement method, Set<String> names) {
+    for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+      String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+          .toString();
+      if (name.startsWith(METHODS_PACKAGE)
+          && names.contains(name.substring(METHODS_PACKAGE.length()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks if a command method declares typed arguments instead of a list, the same way as
+   * HandlerMethod does at runtime.
+   */
+  private boolean isTypedCommand(ExecutableElement method) {
+    List<? extends VariableElement> parameters = method.getParameters();
+    if (parameters.size() <= 2
+        || !isAnnotated(method, Collections.singleton("CommandMethod"))) {
+      return false;
+    }
+    TypeMirror arguments = processingEnv.getElementUtils().getTypeElement(COMMAND_ARGUMENTS)
+        .asType();
+    return !processingEnv.getTypeUtils().isAssignable(arguments,
+        processingEnv.getTypeUtils().erasure(parameters.get(2).asType()));
+  }
+
+  private boolean hasSupportedArguments(ExecutableElement method) {
+    List<? extends VariableElement> parameters = method.getParameters();
+    for (int i = 2; i < parameters.size(); i++) {
+      if (findGetter(parameters.get(i).asType(), i == parameters.size() - 1) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the CommandArguments getter which converts an argument to the type.
+   *
+   * @return null if the type is not supported
+   */
+  private String findGetter(TypeMirror type, boolean last) {
+    switch (boxed(type)) {
+      case "java.lang.String":
+        return last ? "getRest" : "get";
+      case "java.lang.Long":
+        return "getLong";
+      case "java.lang.Integer":
+        return "getInt";
+      case "java.lang.Double":
+        return "getDouble";
+      case "java.lang.Boolean":
+        return "getBoolean";
+      default:
+        return null;
+    }
+  }
+
+  private boolean throwsOnlyExceptions(ExecutableElement method) {
+    TypeMirror exception = processingEnv.getElementUtils().getTypeElement("java.lang.Exception")
+        .asType();
+    TypeMirror error = processingEnv.getElementUtils().getTypeElement("java.lang.Error")
+        .asType();
+    for (TypeMirror thrown : method.getThrownTypes()) {
+      if (!processingEnv.getTypeUtils().isAssignable(thrown, exception)
+          && !processingEnv.getTypeUtils().isAssignable(thrown, error)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void generate(TypeElement type, List<ExecutableElement> methods) {
+    PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+    String packageName = packageElement.getQualifiedName().toString();
+    String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+    String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+        .replace('$', '_') + SUFFIX;
+    String typeName = erasure(type.asType());
+
+    try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+        .createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName,
+            type).openWriter())) {
+      if (!packageName.isEmpty()) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("/**");
+      out.println(" * Routes of {@link " + typeName + "}, generated by tgwebhook-processor.");
+      out.println(" */");
+      out.println("public final class " + simpleName + " implements " + GENERATED_ROUTES + " {");
+      out.println();
+      out.println("  @Override");
+      out.println("  public java.lang.reflect.Method[] methods() throws NoSuchMethodException {");
+      out.println("    return new java.lang.reflect.Method[] {");
+      for (ExecutableElement method : methods) {
+        StringBuilder parameters = new StringBuilder();
+        for (VariableElement parameter : method.getParameters()) {
+          parameters.append(", ").append(erasure(parameter.asType())).append(".class");
+        }
+        out.println("        " + typeName + ".class.getMethod(\"" + method.getSimpleName() + "\""
+            + parameters + "),");
+      }
+      out.println("    };");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  @SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+      out.println("  public Object invoke(int index, Object handler, Object arg0, Object arg1,");
+      out.println("      Object arg2, Object arg3) throws Exception {");
+      out.println("    " + typeName + " target = (" + typeName + ") handler;");
+      out.println("    switch (index) {");
+      for (int i = 0; i < methods.size(); i++) {
+        ExecutableElement method = methods.get(i);
+        StringBuilder arguments = new StringBuilder();
+        List<? extends VariableElement> parameters = method.getParameters();
+        boolean typed = isTypedCommand(method);
+        for (int j = 0; j < parameters.size(); j++) {
+          if (j > 0) {
+            arguments.append(", ");
+          }
+          TypeMirror parameterType = parameters.get(j).asType();
+          if (typed && j >= 2) {
+            arguments.append("((").append(COMMAND_ARGUMENTS).append(") arg2).")
+                .append(findGetter(parameterType, j == parameters.size() - 1))
+                .append('(').append(j - 2).append(')');
+          } else {
+            arguments.append('(').append(boxed(parameterType)).append(") arg").append(j);
+          }
+        }
+        String call = "target." + method.getSimpleName() + "(" + arguments + ")";
+        out.println("      case " + i + ":");
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+          out.println("        " + call + ";");
+          out.println("        return null;");
+        } else {
+          out.println("        return " + call + ";");
+        }
+      }
+      out.println("      default:");
+      out.println("        throw new IllegalArgumentException(\"Unknown method: \" + index);");
+      out.println("    }");
+      out.println("  }");
+      out.println("}");
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Kind.ERROR,
+          "Cannot generate routes: " + e.getMessage(), type);
+    }
+  }
+
+  private String erasure(TypeMirror type) {
+    return processingEnv.getTypeUtils().erasure(type).toString();
+  }
+
+  private String boxed(TypeMirror type) {
+    if (type.getKind().isPrimitive()) {
+      return processingEnv.getTypeUtils().boxedClass(
+          processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).getQualifiedName()
+          .toString();
+    }
+    return erasure(type);
+  }
+}
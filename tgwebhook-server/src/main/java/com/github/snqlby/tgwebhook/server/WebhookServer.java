@@ -0,0 +1,236 @@
+package com.github.snqlby.tgwebhook.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.snqlby.tgwebhook.RequestResolver;
+import com.github.snqlby.tgwebhook.UpdateReader;
+import com.github.snqlby.tgwebhook.utils.AsyncExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.bots.TelegramWebhookBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Lightweight webhook endpoint based on the JDK HTTP server.
+ *
+ * <p>Requests to {@code /{space}} are processed by a {@link RequestResolver} of the space, and the
+ * returned BotApiMethod is written back as the webhook response. Connections are kept alive by
+ * the HTTP server, request bodies are limited by {@link #DEFAULT_MAX_BODY_SIZE} unless configured
+ * otherwise.</p>
+ *
+ * <pre>{@code
+ * WebhookServer server = new WebhookServer(new InetSocketAddress(8443));
+ * server.register(Handlers.DEFAULT_SPACE, bot);
+ * server.start();
+ * }</pre>
+ */
+public class WebhookServer {
+
+  public static final int DEFAULT_MAX_BODY_SIZE = 1 << 20;
+  private static final Logger LOG = LoggerFactory.getLogger(WebhookServer.class);
+  private static final byte[] EMPTY = new byte[0];
+
+  private final HttpServer server;
+  private final int maxBodySize;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a server with the default executor and body size limit.
+   *
+   * @throws IOException if the address can't be bound
+   */
+  public WebhookServer(InetSocketAddress address) throws IOException {
+    this(address, DEFAULT_MAX_BODY_SIZE, AsyncExecutors.defaultExecutor());
+  }
+
+  /**
+   * Creates a server.
+   *
+   * @param maxBodySize max size of a request body in bytes, larger requests are rejected
+   * @param executor reads requests and runs handlers
+   * @throws IOException if the address can't be bound
+   */
+  public WebhookServer(InetSocketAddress address, int maxBodySize, Executor executor)
+      throws IOException {
+    this.maxBodySize = maxBodySize;
+    this.server = HttpServer.create(address, 0);
+    this.server.setExecutor(executor);
+    this.server.createContext("/", this::handle);
+  }
+
+  /**
+   * Serves a space at {@code /{space}}.
+   *
+   * @param bot passed to handlers of the space
+   */
+  public WebhookServer register(String space, TelegramWebhookBot bot) {
+    return register(space, new RequestResolver(space, bot));
+  }
+
+  /**
+   * Serves a space at {@code /{space}} with a configured resolver, for example with metrics or
+   * deduplication of updates.
+   *
+   * @param resolver resolver of the same space
+   */
+  public WebhookServer register(String space, RequestResolver resolver) {
+    endpoints.put(space, new Endpoint(resolver, new UpdateReader(space, mapper)));
+    return this;
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stops the server.
+   *
+   * @param delay max time in seconds to wait for running exchanges
+   */
+  public void stop(int delay) {
+    server.stop(delay);
+  }
+
+  /**
+   * Returns the bound port, useful if the server was created with port 0.
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        respond(exchange, 405, EMPTY);
+        return;
+      }
+
+      Endpoint endpoint = endpoints.get(exchange.getRequestURI().getPath().substring(1));
+      if (endpoint == null) {
+        respond(exchange, 404, EMPTY);
+        return;
+      }
+
+      byte[] body = readBody(exchange);
+      if (body == null) {
+        respond(exchange, 413, EMPTY);
+        return;
+      }
+
+      Update update;
+      try {
+        update = endpoint.reader.read(body);
+      } catch (IOException e) {
+        LOG.warn("Cannot read an update: {}", e.getMessage());
+        respond(exchange, 400, EMPTY);
+        return;
+      }
+      if (update == null) {
+        respond(exchange, 200, EMPTY);
+        return;
+      }
+
+      endpoint.resolver.handleRequestAsync(update).whenComplete((method, e) -> {
+        if (e != null) {
+          LOG.error("Cannot process an update: {}", e.getMessage());
+        }
+        try {
+          respond(exchange, 200, method == null ? EMPTY : toJson(method));
+        } catch (IOException ex) {
+          LOG.warn("Cannot write a response: {}", ex.getMessage());
+          exchange.close();
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      exchange.close();
+      throw e;
+    }
+  }
+
+  private byte[] toJson(BotApiMethod method) {
+    try {
+      return mapper.writeValueAsBytes(method);
+    } catch (IOException e) {
+      LOG.error("Cannot serialize {}: {}", method.getMethod(), e.getMessage());
+      return EMPTY;
+    }
+  }
+
+  /**
+   * Reads a request body.
+   *
+   * @return null if the body is larger than the limit
+   */
+  private byte[] readBody(HttpExchange exchange) throws IOException {
+    String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+    int expected = -1;
+    if (contentLength != null) {
+      try {
+        long length = Long.parseLong(contentLength);
+        if (length > maxBodySize) {
+          return null;
+        }
+        expected = (int) length;
+      } catch (NumberFormatException ignored) {
+        // Read the body until the end of the stream
+      }
+    }
+
+    byte[] buffer = new byte[expected >= 0 ? expected : Math.min(8192, maxBodySize)];
+    int size = 0;
+    try (InputStream in = exchange.getRequestBody()) {
+      while (true) {
+        if (size == buffer.length) {
+          if (expected >= 0) {
+            break;
+          }
+          if (size == maxBodySize) {
+            return in.read() < 0 ? buffer : null;
+          }
+          buffer = Arrays.copyOf(buffer, Math.min(maxBodySize, size * 2));
+        }
+        int read = in.read(buffer, size, buffer.length - size);
+        if (read < 0) {
+          break;
+        }
+        size += read;
+      }
+    }
+    return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+  }
+
+  private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    if (body.length > 0) {
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    }
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+    exchange.close();
+  }
+
+  private static final class Endpoint {
+
+    private final RequestResolver resolver;
+    private final UpdateReader reader;
+
+    private Endpoint(RequestResolver resolver, UpdateReader reader) {
+      this.resolver = resolver;
+      this.reader = reader;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package com.github.snqlby.tgwebhook.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.snqlby.tgwebhook.AcceptTypes;
+import com.github.snqlby.tgwebhook.Handlers;
+import com.github.snqlby.tgwebhook.UpdateType;
+import com.github.snqlby.tgwebhook.methods.CommandMethod;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.telegram.telegrambots.bots.TelegramWebhookBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+public class WebhookServerTest {
+
+  private static final String SPACE = "webhook-server-test";
+  private static final String START = "{\"update_id\":1,\"message\":{\"message_id\":1,\"date\":1,"
+      + "\"from\":{\"id\":100,\"first_name\":\"User\",\"is_bot\":false},"
+      + "\"chat\":{\"id\":100,\"type\":\"private\"},\"text\":\"/start\","
+      + "\"entities\":[{\"type\":\"bot_command\",\"offset\":0,\"length\":6}]}}";
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private WebhookServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    Handlers.addHandler(SPACE, new StartHandler());
+    server = new WebhookServer(new InetSocketAddress("localhost", 0),
+        WebhookServer.DEFAULT_MAX_BODY_SIZE, executor);
+    server.register(SPACE, new Bot());
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    executor.shutdownNow();
+    Handlers.clearHandlers(SPACE);
+  }
+
+  @Test
+  public void respondsWithMethod() throws IOException {
+    HttpURLConnection connection = post("/" + SPACE, START);
+
+    assertEquals(200, connection.getResponseCode());
+    String response = read(connection.getInputStream());
+    assertTrue(response, response.contains("\"method\":\"sendmessage\""));
+    assertTrue(response, response.contains("\"text\":\"Hello world\""));
+  }
+
+  @Test
+  public void rejectsUnknownSpace() throws IOException {
+    assertEquals(404, post("/unknown", START).getResponseCode());
+  }
+
+  @Test
+  public void rejectsMalformedUpdate() throws IOException {
+    assertEquals(400, post("/" + SPACE, "{").getResponseCode());
+  }
+
+  private HttpURLConnection post(String path, String body) throws IOException {
+    URL url = new URL("http://localhost:" + server.getPort() + path);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/json");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    return connection;
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+    in.close();
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @AcceptTypes({UpdateType.MESSAGE})
+  public static class StartHandler {
+
+    @CommandMethod(command = "/start")
+    public BotApiMethod onStart(AbsSender bot, Message message, List<String> args) {
+      return new SendMessage(message.getChatId(), "Hello world");
+    }
+  }
+
+  private static class Bot extends TelegramWebhookBot {
+
+    @Override
+    public BotApiMethod onWebhookUpdateReceived(Update update) {
+      return null;
+    }
+
+    @Override
+    public String getBotUsername() {
+      return "test_bot";
+    }
+
+    @Override
+    public String getBotToken() {
+      return "";
+    }
+
+    @Override
+    public String getBotPath() {
+      return SPACE;
+    }
+  }
+}